@@ -0,0 +1,104 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.csv.WorklogRow;
+import com.github.gbaso.timesheet.service.CsvReaderService;
+import com.github.gbaso.timesheet.service.Timesheet;
+import com.github.gbaso.timesheet.utils.TimeUtils;
+
+/**
+ * Compares the opencsv bean binding with the {@link com.github.gbaso.timesheet.csv.JiraCsvParser} fast path, streamed or memory-mapped, on a synthetic export of
+ * a year of worklogs.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CsvReaderBenchmark {
+
+    private static final LocalDate from    = WorklogCsvGenerator.START;
+    private static final LocalDate to      = WorklogCsvGenerator.START.plusYears(1).minusDays(1);
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int                     rows;
+
+    private final CsvReaderService service = new CsvReaderService(new TimesheetProperties());
+    private Path                   file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = WorklogCsvGenerator.generate(rows, 20, 1000, 365);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        service.destroy();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Timesheet opencsv() throws IOException {
+        var timesheet = new Timesheet(from, to);
+        try (var inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+            for (WorklogRow row : service.readWorklog(inputStream, WorklogCsvGenerator.AUTHOR, from, to)) {
+                timesheet.add(row.getKey(), row.getSummary(), row.getStarted(), TimeUtils.parseMinutes(row.getTimeSpent()));
+            }
+        }
+        return timesheet;
+    }
+
+    @Benchmark
+    public Timesheet fastPath() throws IOException {
+        var timesheet = new Timesheet(from, to);
+        try (var inputStream = Files.newInputStream(file)) {
+            service.readWorklog(inputStream, WorklogCsvGenerator.AUTHOR, from, to, timesheet);
+        }
+        return timesheet;
+    }
+
+    @Benchmark
+    public Timesheet mappedFile() throws IOException {
+        var timesheet = new Timesheet(from, to);
+        service.readWorklog(file, WorklogCsvGenerator.AUTHOR, from, to, timesheet);
+        return timesheet;
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.gbaso.timesheet.utils.TimeUtils;
+
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TimeUtilsBenchmark {
+
+    private final String[]        durations = WorklogCsvGenerator.DURATIONS;
+    private final StringBuilder[] builders  = Arrays.stream(durations).map(StringBuilder::new).toArray(StringBuilder[]::new);
+    private final int[]           minutes   = { 0, 15, 30, 60, 90, 240, 480, 510, 1230, 9600 };
+
+    @Benchmark
+    public void parseMinutes(Blackhole blackhole) {
+        for (String duration : durations) {
+            blackhole.consume(TimeUtils.parseMinutes(duration));
+        }
+    }
+
+    @Benchmark
+    public void parseMinutesFromBuilder(Blackhole blackhole) {
+        for (StringBuilder duration : builders) {
+            blackhole.consume(TimeUtils.parseMinutes(duration));
+        }
+    }
+
+    @Benchmark
+    public void formatMinutes(Blackhole blackhole) {
+        for (int value : minutes) {
+            blackhole.consume(TimeUtils.formatMinutes(value));
+        }
+    }
+
+}
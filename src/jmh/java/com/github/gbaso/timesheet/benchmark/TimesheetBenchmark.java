@@ -0,0 +1,114 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.ApiReaderService;
+import com.github.gbaso.timesheet.service.CsvReaderService;
+import com.github.gbaso.timesheet.service.IssueCache;
+import com.github.gbaso.timesheet.service.ReportMetrics;
+import com.github.gbaso.timesheet.service.SiteCache;
+import com.github.gbaso.timesheet.service.TimesheetService;
+import com.github.gbaso.timesheet.service.UserCache;
+import com.github.gbaso.timesheet.service.WorkbookService;
+import com.github.gbaso.timesheet.service.WorklogStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Measures a whole report through the {@link TimesheetService} entry points, from reading an export to writing the workbook, for a week and a year of
+ * worklogs.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class TimesheetBenchmark {
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int               rows;
+
+    @Param({ "7", "365" })
+    public int               days;
+
+    private CsvReaderService csvReaderService;
+    private TimesheetService service;
+    private Path             file;
+    private LocalDate        to;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = WorklogCsvGenerator.generate(rows, 20, 1000, days);
+        to = WorklogCsvGenerator.START.plusDays(days - 1L);
+        var properties = new TimesheetProperties();
+        properties.getCsv().setImportDirectory(file.getParent());
+        properties.getCsv().setMaxUploadRows(Long.MAX_VALUE);
+        var meterRegistry = new SimpleMeterRegistry();
+        var reportMetrics = new ReportMetrics(meterRegistry);
+        // the exports are read from files only, the Jira client is never called
+        var apiReaderService = new ApiReaderService(WebClient.create(), properties, new WorklogStore(properties, Jackson2ObjectMapperBuilder.json().build()),
+                new IssueCache(properties, meterRegistry), new SiteCache(properties, meterRegistry), new UserCache(properties, meterRegistry), reportMetrics);
+        csvReaderService = new CsvReaderService(properties);
+        service = new TimesheetService(csvReaderService, apiReaderService, new WorkbookService(properties), reportMetrics, properties);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        csvReaderService.destroy();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void upload() throws IOException {
+        try (var inputStream = Files.newInputStream(file)) {
+            service.generateReportFromUpload(inputStream, Set.of(WorklogCsvGenerator.AUTHOR), WorklogCsvGenerator.START, to, false)
+                    .writeTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public void serverFile() throws IOException {
+        service.generateReportFromServerFile(file.getFileName().toString(), WorklogCsvGenerator.AUTHOR, WorklogCsvGenerator.START, to)
+                .writeTo(OutputStream.nullOutputStream());
+    }
+
+}
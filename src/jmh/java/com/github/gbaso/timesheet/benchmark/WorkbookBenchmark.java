@@ -0,0 +1,98 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.ReportProgress;
+import com.github.gbaso.timesheet.service.Timesheet;
+import com.github.gbaso.timesheet.service.WorkbookService;
+
+/**
+ * Measures the conversion of a {@link Timesheet} into a workbook and its serialization, for date ranges from a week to a year, against the native writer
+ * which writes the SpreadsheetML without building a workbook.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class WorkbookBenchmark {
+
+    @Param({ "100", "1000" })
+    public int                    issues;
+
+    @Param({ "7", "31", "365" })
+    public int                    days;
+
+    private final WorkbookService service = new WorkbookService(new TimesheetProperties());
+    private Timesheet             timesheet;
+
+    @Setup
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        timesheet = new Timesheet(WorklogCsvGenerator.START, WorklogCsvGenerator.START.plusDays(days - 1L));
+        for (int issue = 0; issue < issues; issue++) {
+            for (int day = 0; day < days; day++) {
+                if (random.nextInt(4) == 0) {
+                    timesheet.add("KEY-" + issue, "Summary for " + issue, WorklogCsvGenerator.START.plusDays(day), 15 * (1 + random.nextInt(32)));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Workbook convertReport() throws IOException {
+        Workbook workbook = service.convertReport(timesheet, WorklogCsvGenerator.AUTHOR);
+        service.close(workbook);
+        return workbook;
+    }
+
+    @Benchmark
+    public void convertAndWriteReport() throws IOException {
+        Workbook workbook = service.convertReport(timesheet, WorklogCsvGenerator.AUTHOR);
+        try {
+            workbook.write(OutputStream.nullOutputStream());
+        } finally {
+            service.close(workbook);
+        }
+    }
+
+    @Benchmark
+    public void writeNativeReport() throws IOException {
+        service.writeReport(timesheet, WorklogCsvGenerator.AUTHOR, new ReportProgress(), OutputStream.nullOutputStream());
+    }
+
+}
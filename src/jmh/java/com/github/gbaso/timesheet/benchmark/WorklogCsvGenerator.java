@@ -0,0 +1,69 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a synthetic Jira worklog export, with the same layout as the test resources. The export is written one row at a time, so that even exports of
+ * millions of rows do not need to fit in memory.
+ */
+public class WorklogCsvGenerator {
+
+    public static final String             AUTHOR    = "Author 0";
+    public static final LocalDate          START     = LocalDate.of(2022, 1, 1);
+    public static final String[]           DURATIONS = { "15m", "30m", "45m", "1h", "1h 30m", "2h", "4h", "1d", "1d 2h 30m" };
+
+    private static final String            HEADER    = "Issue Type,Key,Summary,Log Work.started,Log Work.timeSpent,Log Work.authorDisplayName\n";
+    private static final String[]          TYPES     = { "Bug", "Task", "Story" };
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy H.mm.ss");
+
+    private WorklogCsvGenerator() {}
+
+    /**
+     * Writes {@code rows} worklogs of {@code authors} authors on {@code issues} issues, spread over {@code days} days from {@link #START}.
+     */
+    public static Path generate(int rows, int authors, int issues, int days) throws IOException {
+        Path file = Files.createTempFile("worklog", ".csv");
+        var random = new SplittableRandom(42);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            var row = new StringBuilder(128);
+            for (int i = 0; i < rows; i++) {
+                int issue = random.nextInt(issues);
+                String started = FORMATTER.format(START.plusDays(random.nextInt(days)).atTime(random.nextInt(24), random.nextInt(60), random.nextInt(60)));
+                row.setLength(0);
+                row.append(TYPES[issue % TYPES.length]).append(',')
+                        .append("KEY-").append(issue).append(',')
+                        .append(issue % 10 == 0 ? "\"Summary, with a comma for " + issue + "\"" : "Summary for " + issue).append(',')
+                        .append(started).append(',')
+                        .append(DURATIONS[random.nextInt(DURATIONS.length)]).append(',')
+                        .append("Author ").append(random.nextInt(authors)).append('\n');
+                writer.append(row);
+            }
+        }
+        return file;
+    }
+
+}
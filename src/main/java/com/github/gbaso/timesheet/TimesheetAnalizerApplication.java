@@ -19,11 +19,15 @@ package com.github.gbaso.timesheet;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.ApplicationPidFileWriter;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * @author Giacomo Baso
  */
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 public class TimesheetAnalizerApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,296 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.config;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import com.github.gbaso.timesheet.utils.TimeUtils;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties("timesheet")
+public class TimesheetProperties {
+
+    private final Workbook  workbook  = new Workbook();
+    private final Report    report    = new Report();
+    private final Csv       csv       = new Csv();
+    private final Worklog   worklog   = new Worklog();
+    private final Jira      jira      = new Jira();
+    private final Jobs      jobs      = new Jobs();
+    private final Threads   threads   = new Threads();
+    private final Admission admission = new Admission();
+
+    @Data
+    public static class Workbook {
+
+        /**
+         * How the reports are written into workbooks.
+         */
+        private Engine  engine              = Engine.POI;
+        /**
+         * Number of report cells (issues times days) above which the workbook is streamed, keeping only a window of rows in memory.
+         */
+        private long    streamingThreshold  = 100_000;
+        /**
+         * Number of rows kept in memory when the workbook is streamed, the others are flushed to a temporary file.
+         */
+        private int     rowAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+        /**
+         * Whether to gzip the temporary files of a streamed workbook.
+         */
+        private boolean compressTempFiles   = false;
+
+        public enum Engine {
+            /**
+             * Builds the workbook with Apache POI, streamed above the {@code streaming-threshold}, then writes it.
+             */
+            POI,
+            /**
+             * Writes the SpreadsheetML of the report straight into the response, row by row, without building a workbook.
+             */
+            NATIVE
+        }
+
+    }
+
+    @Data
+    public static class Report {
+
+        /**
+         * Whether to write the report to a temporary file before sending it, so that the response has a known content length.
+         */
+        private boolean  spoolToFile  = false;
+        /**
+         * Directory of the cache of rendered reports, keyed by a hash of the data and parameters of each report. When not set, reports are always rendered.
+         * Reports from the API are only cached when read from the worklog store.
+         */
+        private Path     cacheDirectory;
+        /**
+         * Maximum size of the cached reports, the least recently used ones being deleted first.
+         */
+        private DataSize cacheMaxSize = DataSize.ofMegabytes(512);
+
+    }
+
+    @Data
+    public static class Csv {
+
+        /**
+         * Size of an uploaded file above which its records are parsed in parallel chunks.
+         */
+        private DataSize parallelThreshold = DataSize.ofMegabytes(32);
+        /**
+         * Maximum number of chunks of a single file parsed in parallel, so that one large upload cannot take all the cores.
+         */
+        private int      maxParallelism    = Runtime.getRuntime().availableProcessors();
+        /**
+         * Number of threads parsing the chunks of large files, shared by all the files read at the same time.
+         */
+        private int      threads           = Runtime.getRuntime().availableProcessors();
+        /**
+         * Maximum number of chunks waiting for a free thread, further chunks are parsed by the thread reading the file.
+         */
+        private int      queueCapacity     = 100;
+        /**
+         * Directory of the worklog exports that can be read from the server, unset to disable reports from server side files.
+         */
+        private Path     importDirectory;
+        /**
+         * Maximum size of a file streamed in the body of a request, once inflated if gzip-compressed.
+         */
+        private DataSize maxUploadSize     = DataSize.ofGigabytes(1);
+        /**
+         * Maximum number of records of a file streamed in the body of a request.
+         */
+        private long     maxUploadRows     = 10_000_000;
+
+    }
+
+    @Data
+    public static class Worklog {
+
+        /**
+         * Hours in a day of a worklog duration such as {@code 1d}, as configured in the time tracking settings of Jira.
+         */
+        private int hoursPerDay = TimeUtils.HOURS_PER_WORK_DAY;
+        /**
+         * Days in a week of a worklog duration such as {@code 1w}, as configured in the time tracking settings of Jira.
+         */
+        private int daysPerWeek = TimeUtils.DAYS_PER_WORK_WEEK;
+
+    }
+
+    @Data
+    public static class Jira {
+
+        /**
+         * How the worklogs of a report are found.
+         */
+        private FetchMode fetchMode             = FetchMode.UPDATED;
+        /**
+         * Maximum number of concurrent requests to Jira for a single report.
+         */
+        private int       concurrency           = 4;
+        /**
+         * Number of worklog ids sent in each worklog/list request.
+         */
+        private int       worklogBatchSize      = 1000;
+        /**
+         * Maximum number of retries of a request rejected with 429 Too Many Requests.
+         */
+        private int       maxRetries            = 3;
+        /**
+         * Delay before the first retry of a rejected request, doubled at each further retry.
+         */
+        private Duration  minBackoff            = Duration.ofSeconds(1);
+        /**
+         * Directory of the local store of the worklogs read from Jira, synced incrementally at each report. When not set, all the worklogs are read at each
+         * report.
+         */
+        private Path      storeDirectory;
+        /**
+         * Maximum number of accounts whose worklog store is kept in memory, the others are read again from their file when needed.
+         */
+        private long      storeCacheMaximumSize = 100;
+        /**
+         * Time after which the issues of the worklog store are read again, through the issue cache, to pick up changes to their summary or type.
+         */
+        private Duration  storeIssueTimeToLive  = Duration.ofHours(12);
+        /**
+         * Time after which a cached issue is searched again, to pick up changes to its summary or type.
+         */
+        private Duration  issueCacheTimeToLive  = Duration.ofHours(12);
+        /**
+         * Maximum number of cached issues, across all Jira sites.
+         */
+        private long      issueCacheMaximumSize = 100_000;
+        /**
+         * Time after which the account ids of a user are searched again by display name, to pick up renamed users.
+         */
+        private Duration  userCacheTimeToLive   = Duration.ofHours(1);
+        /**
+         * Maximum number of users whose account ids are cached, across all Jira sites.
+         */
+        private long      userCacheMaximumSize  = 10_000;
+        /**
+         * Number of issue ids looked up by each search request, at most 100.
+         */
+        private int       issueSearchBatchSize  = 100;
+        /**
+         * Base URL of the Atlassian API, through which the Jira sites are read.
+         */
+        private String    baseUrl               = "https://api.atlassian.com";
+        /**
+         * Maximum number of connections to Jira, shared by all the reports. Requests beyond the limit wait for a free connection.
+         */
+        private int       maxConnections        = 500;
+        /**
+         * Maximum number of requests waiting for a free connection to Jira, further requests fail at once rather than queueing without bound.
+         */
+        private int       maxPendingAcquires    = 2000;
+        /**
+         * URL or name of the Jira site to read from, for clients with access to several sites. When not set, the first accessible site is read.
+         */
+        private String    site;
+        /**
+         * Time after which the sites accessible to a client are read again.
+         */
+        private Duration  siteCacheTimeToLive   = Duration.ofHours(1);
+
+        public enum FetchMode {
+            /**
+             * Reads all the worklogs updated since the start of the report, then keeps those of the author.
+             */
+            UPDATED,
+            /**
+             * Searches the issues with worklogs of the author in the report dates, then reads the worklogs of those issues only.
+             */
+            JQL
+        }
+
+    }
+
+    @Data
+    public static class Jobs {
+
+        /**
+         * Maximum number of report jobs generated at the same time.
+         */
+        private int      concurrency      = 2;
+        /**
+         * Maximum number of report jobs waiting for a free worker, further jobs are rejected.
+         */
+        private int      queueCapacity    = 20;
+        /**
+         * Time after which a completed job and its result are deleted.
+         */
+        private Duration resultTimeToLive = Duration.ofHours(1);
+
+    }
+
+    @Data
+    public static class Threads {
+
+        /**
+         * Whether to run the servlet requests and the report jobs on virtual threads, which requires Java 21 or later.
+         */
+        private boolean virtual = false;
+
+    }
+
+    @Data
+    public static class Admission {
+
+        /**
+         * Whether report requests are admitted by cost, queueing or rejecting them with 429 Too Many Requests when over budget.
+         */
+        private boolean  enabled           = true;
+        /**
+         * Maximum total cost of the reports built at the same time. A report costs a unit per month of its dates, plus a unit per
+         * {@code upload-size-per-cost} of its upload.
+         */
+        private int      maxCost           = 4 * Runtime.getRuntime().availableProcessors();
+        /**
+         * Maximum total cost of the reports built at the same time for the same user, further reports of the user are rejected.
+         */
+        private int      maxUserCost       = 12;
+        /**
+         * Size of an upload counted as one unit of cost.
+         */
+        private DataSize uploadSizePerCost = DataSize.ofMegabytes(32);
+        /**
+         * Maximum number of reports waiting for the cost of the others to be released, further reports are rejected.
+         */
+        private int      maxQueueLength    = 50;
+        /**
+         * Maximum time a report waits in the queue before being rejected.
+         */
+        private Duration maxWait           = Duration.ofSeconds(30);
+        /**
+         * Delay after which rejected clients are asked to retry, in the Retry-After header.
+         */
+        private Duration retryAfter        = Duration.ofSeconds(30);
+
+    }
+
+}
@@ -1,9 +1,14 @@
 package com.github.gbaso.timesheet.config;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.client.web.DefaultOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
@@ -11,25 +16,55 @@ import org.springframework.security.oauth2.client.web.reactive.function.client.S
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 @Configuration
 public class WebClientConfig {
 
     @Bean
-    WebClient webClient(OAuth2AuthorizedClientManager authorizedClientManager) {
+    WebClient webClient(OAuth2AuthorizedClientManager authorizedClientManager, ConnectionProvider jiraConnectionProvider, TimesheetProperties properties) {
         var oauth2Client = new ServletOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
         return WebClient.builder()
-                .uriBuilderFactory(new DefaultUriBuilderFactory("https://api.atlassian.com"))
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(jiraConnectionProvider)))
+                .uriBuilderFactory(new DefaultUriBuilderFactory(properties.getJira().getBaseUrl()))
                 .apply(oauth2Client.oauth2Configuration())
                 .build();
     }
 
+    /**
+     * Connections to Jira, with up to {@code timesheet.jira.max-pending-acquires} requests waiting for a free connection: by default at most twice the
+     * connections could wait, failing the requests of concurrent reports, while without a limit a burst of reports would queue requests without bound.
+     */
+    @Bean(destroyMethod = "dispose")
+    ConnectionProvider jiraConnectionProvider(TimesheetProperties properties) {
+        var jira = properties.getJira();
+        return ConnectionProvider.builder("jira")
+                .maxConnections(jira.getMaxConnections())
+                .pendingAcquireMaxCount(jira.getMaxPendingAcquires())
+                .build();
+    }
+
+    /**
+     * Authorizes requests with the servlet request on the request thread, and with the authorized client service off it, as in report jobs, so that expired
+     * access tokens are refreshed in both cases.
+     */
     @Bean
-    OAuth2AuthorizedClientManager authorizedClientManager(ClientRegistrationRepository clientRegistrationRepository, OAuth2AuthorizedClientRepository authorizedClientRepository) {
+    OAuth2AuthorizedClientManager authorizedClientManager(ClientRegistrationRepository clientRegistrationRepository, OAuth2AuthorizedClientRepository authorizedClientRepository,
+            OAuth2AuthorizedClientService authorizedClientService) {
         var authorizedClientProvider = OAuth2AuthorizedClientProviderBuilder.builder()
                 .authorizationCode()
+                .refreshToken()
                 .build();
         var authorizedClientManager = new DefaultOAuth2AuthorizedClientManager(clientRegistrationRepository, authorizedClientRepository);
         authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
-        return authorizedClientManager;
+        var serviceAuthorizedClientManager = new AuthorizedClientServiceOAuth2AuthorizedClientManager(clientRegistrationRepository, authorizedClientService);
+        serviceAuthorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
+        return authorizeRequest -> {
+            if (authorizeRequest.getAttribute(HttpServletRequest.class.getName()) == null) {
+                return serviceAuthorizedClientManager.authorize(authorizeRequest);
+            }
+            return authorizedClientManager.authorize(authorizeRequest);
+        };
     }
 }
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Splits the records of a CSV file into ranges of similar size that can be parsed independently. Ranges are aligned on record boundaries even when quoted fields
+ * contain line breaks: the quotes of each range are counted in parallel, so that the quoting state at the start of every range is known before looking for the
+ * next line terminator.
+ */
+public class CsvChunker {
+
+    private static final byte QUOTE       = '"';
+    private static final byte LF          = '\n';
+    private static final int  BUFFER_SIZE = 64 * 1024;
+
+    public record Chunk(long start, long end) {
+
+        public long size() {
+            return end - start;
+        }
+
+    }
+
+    private CsvChunker() {}
+
+    /**
+     * Splits the records between {@code start} and the end of the file into at most {@code count} chunks.
+     */
+    public static List<Chunk> split(FileChannel channel, long start, int count, Executor executor) throws IOException {
+        long size = channel.size();
+        long rawSize = (size - start) / count;
+        if (count <= 1 || rawSize == 0) {
+            return List.of(new Chunk(start, size));
+        }
+        var rawStarts = new long[count];
+        for (int i = 0; i < count; i++) {
+            rawStarts[i] = start + i * rawSize;
+        }
+        List<CompletableFuture<Boolean>> oddQuotes = new ArrayList<>(count - 1);
+        for (int i = 0; i < count - 1; i++) {
+            long from = rawStarts[i];
+            long to = rawStarts[i + 1];
+            oddQuotes.add(CompletableFuture.supplyAsync(() -> hasOddQuotes(channel, from, to), executor));
+        }
+        List<Chunk> chunks = new ArrayList<>(count);
+        long chunkStart = start;
+        boolean quoted = false;
+        for (int i = 1; i < count; i++) {
+            quoted ^= oddQuotes.get(i - 1).join();
+            long recordStart = Math.max(findRecordStart(channel, rawStarts[i], quoted), chunkStart);
+            if (recordStart > chunkStart) {
+                chunks.add(new Chunk(chunkStart, recordStart));
+                chunkStart = recordStart;
+            }
+        }
+        if (size > chunkStart) {
+            chunks.add(new Chunk(chunkStart, size));
+        }
+        return chunks;
+    }
+
+    /**
+     * Maps the bytes of a chunk in memory, so that they can be parsed without copying them. The chunk must not be larger than {@link Integer#MAX_VALUE} bytes.
+     * The mapping is not released when the channel is closed, but only once the buffer is garbage collected: callers should map bounded chunks one at a time
+     * and drop each buffer once parsed.
+     */
+    public static MappedByteBuffer map(FileChannel channel, Chunk chunk) throws IOException {
+        return channel.map(MapMode.READ_ONLY, chunk.start(), chunk.size());
+    }
+
+    private static boolean hasOddQuotes(FileChannel channel, long from, long to) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = map(channel, new Chunk(from, to));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        boolean odd = false;
+        for (int i = 0, limit = buffer.limit(); i < limit; i++) {
+            if (buffer.get(i) == QUOTE) {
+                odd = !odd;
+            }
+        }
+        return odd;
+    }
+
+    private static long findRecordStart(FileChannel channel, long from, boolean quoted) throws IOException {
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = from;
+        int read;
+        while ((read = channel.read(buffer.clear(), position)) > 0) {
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == QUOTE) {
+                    quoted = !quoted;
+                } else if (bytes[i] == LF && !quoted) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return channel.size();
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a CSV file streamed in the body of a request, as the bytes arrive, inflating it if gzip-compressed. The size of the file and the number of its records
+ * are limited, so that an upload cannot fill the memory or keep the parser busy for too long, whatever its size.
+ */
+public class CsvUpload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CsvUpload() {}
+
+    /**
+     * The content of the upload, inflated if it starts with the gzip magic bytes, which fails once more than {@code maxSize} bytes are read from it.
+     */
+    public static InputStream open(InputStream body, long maxSize) throws IOException {
+        var bufferedBody = new BufferedInputStream(body, BUFFER_SIZE);
+        bufferedBody.mark(2);
+        int magic = bufferedBody.read() | bufferedBody.read() << 8;
+        bufferedBody.reset();
+        InputStream content = magic == GZIPInputStream.GZIP_MAGIC ? new GZIPInputStream(bufferedBody, BUFFER_SIZE) : bufferedBody;
+        return new LimitedInputStream(content, maxSize);
+    }
+
+    /**
+     * Counts the records read from an upload, failing once more than {@code maxRows} are read.
+     */
+    public static class RowLimit {
+
+        private final long maxRows;
+        private long       rows;
+
+        public RowLimit(long maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        public void rowRead() {
+            if (++rows > maxRows) {
+                throw new LimitExceededException("The upload has more than " + maxRows + " rows");
+            }
+        }
+
+    }
+
+    /**
+     * Thrown when an upload is over its size or row limit.
+     */
+    public static class LimitExceededException extends RuntimeException {
+
+        public LimitExceededException(String message) {
+            super(message);
+        }
+
+    }
+
+    /**
+     * Fails the read of the byte after the limit, rather than silently truncating the content.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long       size;
+
+        LimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long n) {
+            size += n;
+            if (size > maxSize) {
+                throw new LimitExceededException("The upload is larger than " + maxSize + " bytes");
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The columns of the Jira worklog export read by {@link JiraCsvParser}, with the same headers bound by {@link WorklogRow}.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum JiraColumn {
+
+    TYPE("Issue Type"),
+    KEY("Key"),
+    SUMMARY("Summary"),
+    STARTED("Log Work.started"),
+    TIME_SPENT("Log Work.timeSpent"),
+    AUTHOR("Log Work.authorDisplayName");
+
+    private final String header;
+
+}
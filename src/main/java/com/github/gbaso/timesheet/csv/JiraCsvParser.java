@@ -0,0 +1,227 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Parser for the worklog CSV exported from Jira. The {@link JiraColumn columns} are located once from the header, then each record is split in place on its UTF-8
+ * bytes, so that no string is created unless asked for by the record handler. Quoted fields may contain commas, escaped quotes and line breaks.
+ */
+public class JiraCsvParser {
+
+    private static final byte QUOTE       = '"';
+    private static final byte COMMA       = ',';
+    private static final byte CR          = '\r';
+    private static final byte LF          = '\n';
+    private static final int  BUFFER_SIZE = 64 * 1024;
+
+    private final int[]       columns;
+    private final int         fieldCapacity;
+
+    private JiraCsvParser(int[] columns) {
+        this.columns = columns;
+        this.fieldCapacity = Arrays.stream(columns).max().orElse(0) + 1;
+    }
+
+    /**
+     * Reads the header record, including its line terminator, so that it can be replayed if the layout is not supported.
+     */
+    public static byte[] readHeader(InputStream inputStream) throws IOException {
+        var header = new ByteArrayOutputStream();
+        boolean quoted = false;
+        int b;
+        while ((b = inputStream.read()) >= 0) {
+            header.write(b);
+            if (b == QUOTE) {
+                quoted = !quoted;
+            } else if (b == LF && !quoted) {
+                break;
+            }
+        }
+        return header.toByteArray();
+    }
+
+    /**
+     * Creates a parser for the given header, if it contains all the {@link JiraColumn columns}.
+     */
+    public static Optional<JiraCsvParser> forHeader(byte[] header) {
+        List<String> names = splitHeader(new String(header, StandardCharsets.UTF_8));
+        var columns = new int[JiraColumn.values().length];
+        for (JiraColumn column : JiraColumn.values()) {
+            int index = names.indexOf(column.getHeader());
+            if (index < 0) {
+                return Optional.empty();
+            }
+            columns[column.ordinal()] = index;
+        }
+        return Optional.of(new JiraCsvParser(columns));
+    }
+
+    private static List<String> splitHeader(String header) {
+        List<String> names = new ArrayList<>();
+        var name = new StringBuilder();
+        boolean quoted = false;
+        for (int i = header.startsWith("\uFEFF") ? 1 : 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c == QUOTE) {
+                if (quoted && i + 1 < header.length() && header.charAt(i + 1) == QUOTE) {
+                    name.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (!quoted && c == COMMA) {
+                names.add(name.toString());
+                name.setLength(0);
+            } else if (quoted || c != CR && c != LF) {
+                name.append(c);
+            }
+        }
+        names.add(name.toString());
+        return names;
+    }
+
+    /**
+     * Parses the records following the header, reading the stream in blocks.
+     */
+    public void parse(InputStream inputStream, Consumer<JiraCsvRecord> handler) throws IOException {
+        var record = new JiraCsvRecord(columns, fieldCapacity);
+        var bytes = new byte[BUFFER_SIZE];
+        var buffer = ByteBuffer.wrap(bytes);
+        int limit = 0;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            int read = inputStream.read(bytes, limit, bytes.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+            int consumed = parse(buffer, 0, limit, endOfInput, record, handler);
+            int remaining = limit - consumed;
+            if (remaining == bytes.length) {
+                // a single record does not fit in the buffer
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                buffer = ByteBuffer.wrap(bytes);
+            } else if (consumed > 0) {
+                System.arraycopy(bytes, consumed, bytes, 0, remaining);
+            }
+            limit = remaining;
+        }
+    }
+
+    /**
+     * Parses the records between the position and the limit of a buffer, which must not contain the header.
+     */
+    public void parse(ByteBuffer buffer, Consumer<JiraCsvRecord> handler) {
+        parse(buffer, buffer.position(), buffer.limit(), true, new JiraCsvRecord(columns, fieldCapacity), handler);
+    }
+
+    /**
+     * Parses all the complete records between {@code from} and {@code limit}, and returns the offset of the first record left incomplete. Unless the end of the input
+     * has been reached, a record is only complete once its line terminator has been read.
+     */
+    private int parse(ByteBuffer buffer, int from, int limit, boolean endOfInput, JiraCsvRecord record, Consumer<JiraCsvRecord> handler) {
+        int recordStart = from;
+        int pos = from;
+        record.reset(buffer);
+        while (pos < limit) {
+            int start = pos;
+            int end;
+            boolean escaped = false;
+            if (buffer.get(pos) == QUOTE) {
+                start = ++pos;
+                while (true) {
+                    if (pos >= limit || pos + 1 >= limit && !endOfInput) {
+                        if (!endOfInput) {
+                            return recordStart;
+                        }
+                        end = pos;
+                        break;
+                    }
+                    if (buffer.get(pos) == QUOTE) {
+                        if (pos + 1 < limit && buffer.get(pos + 1) == QUOTE) {
+                            escaped = true;
+                            pos += 2;
+                            continue;
+                        }
+                        end = pos++;
+                        break;
+                    }
+                    pos++;
+                }
+                // be lenient with characters between the closing quote and the delimiter
+                while (pos < limit && !isDelimiter(buffer.get(pos))) {
+                    pos++;
+                }
+            } else {
+                while (pos < limit && !isDelimiter(buffer.get(pos))) {
+                    pos++;
+                }
+                end = pos;
+            }
+            if (pos >= limit && !endOfInput) {
+                return recordStart;
+            }
+            record.addField(start, end, escaped);
+            if (pos < limit && buffer.get(pos) == COMMA) {
+                pos++;
+                if (pos == limit && endOfInput) {
+                    record.addField(pos, pos, false);
+                }
+                continue;
+            }
+            if (pos < limit && buffer.get(pos) == CR) {
+                if (pos + 1 >= limit && !endOfInput) {
+                    return recordStart;
+                }
+                pos++;
+            }
+            if (pos < limit && buffer.get(pos) == LF) {
+                pos++;
+            }
+            if (!record.isEmpty()) {
+                handler.accept(record);
+            }
+            recordStart = pos;
+            record.reset(buffer);
+        }
+        if (endOfInput && recordStart < limit) {
+            // last record without line terminator
+            if (!record.isEmpty()) {
+                handler.accept(record);
+            }
+            return limit;
+        }
+        return recordStart;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == COMMA || b == LF || b == CR;
+    }
+
+}
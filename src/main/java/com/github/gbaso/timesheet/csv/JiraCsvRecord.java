@@ -0,0 +1,213 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * A view over the current record of a {@link JiraCsvParser}. The same instance is reused for every record, and is only valid while it is being handled.
+ */
+public class JiraCsvRecord {
+
+    private final int[]       columns;
+    private final int[]       starts;
+    private final int[]       ends;
+    private final boolean[]   escaped;
+    private final AsciiView   view = new AsciiView();
+
+    private ByteBuffer        buffer;
+    private int               fieldCount;
+
+    JiraCsvRecord(int[] columns, int fieldCapacity) {
+        this.columns = columns;
+        this.starts = new int[fieldCapacity];
+        this.ends = new int[fieldCapacity];
+        this.escaped = new boolean[fieldCapacity];
+    }
+
+    void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.fieldCount = 0;
+    }
+
+    void addField(int start, int end, boolean escapedQuotes) {
+        if (fieldCount < starts.length) {
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            escaped[fieldCount] = escapedQuotes;
+        }
+        fieldCount++;
+    }
+
+    boolean isEmpty() {
+        return fieldCount == 1 && starts[0] == ends[0];
+    }
+
+    public boolean isBlank(JiraColumn column) {
+        int field = columns[column.ordinal()];
+        if (field >= fieldCount) {
+            return true;
+        }
+        for (int i = starts[field]; i < ends[field]; i++) {
+            if (!Character.isWhitespace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the value of the column is equal to the given UTF-8 encoded value.
+     */
+    public boolean matches(JiraColumn column, byte[] value) {
+        int field = columns[column.ordinal()];
+        if (field >= fieldCount) {
+            return value.length == 0;
+        }
+        if (escaped[field]) {
+            return getString(column).equals(new String(value, StandardCharsets.UTF_8));
+        }
+        int start = starts[field];
+        if (ends[field] - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first of the given UTF-8 encoded values equal to the value of the column, or -1 if none is.
+     */
+    public int indexOf(JiraColumn column, byte[][] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (matches(column, values[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the date of a {@code dd/MM/yyyy HH.mm.ss} value, ignoring the time.
+     */
+    public LocalDate getDate(JiraColumn column) {
+        int field = columns[column.ordinal()];
+        int end = field < fieldCount ? ends[field] : 0;
+        int pos = field < fieldCount ? starts[field] : 0;
+        int day = 0;
+        int month = 0;
+        int year = 0;
+        int part = 0;
+        int digits = 0;
+        for (; pos < end && part < 3; pos++) {
+            byte b = buffer.get(pos);
+            if (b >= '0' && b <= '9') {
+                int digit = b - '0';
+                switch (part) {
+                    case 0 -> day = day * 10 + digit;
+                    case 1 -> month = month * 10 + digit;
+                    default -> year = year * 10 + digit;
+                }
+                digits++;
+            } else if (b == '/' && part < 2 && digits > 0) {
+                part++;
+                digits = 0;
+            } else if (b == ' ' && part == 2) {
+                part++;
+            } else {
+                break;
+            }
+        }
+        if (part < 2 || part == 2 && digits == 0) {
+            throw new IllegalArgumentException("Invalid date: " + getString(column));
+        }
+        return LocalDate.of(year, month, day);
+    }
+
+    /**
+     * Exposes the value of the column as characters without decoding it, which is only correct for ASCII values such as durations. The returned sequence is reused,
+     * and must not be kept.
+     */
+    public CharSequence getAscii(JiraColumn column) {
+        int field = columns[column.ordinal()];
+        if (field >= fieldCount) {
+            view.reset(0, 0);
+        } else {
+            view.reset(starts[field], ends[field]);
+        }
+        return view;
+    }
+
+    public String getString(JiraColumn column) {
+        int field = columns[column.ordinal()];
+        if (field >= fieldCount) {
+            return "";
+        }
+        int start = starts[field];
+        int length = ends[field] - start;
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        } else {
+            var bytes = new byte[length];
+            buffer.get(start, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return escaped[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    private class AsciiView implements CharSequence {
+
+        private int start;
+        private int end;
+
+        void reset(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            var bytes = new byte[length()];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+    }
+
+}
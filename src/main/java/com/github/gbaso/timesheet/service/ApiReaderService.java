@@ -2,128 +2,713 @@ package com.github.gbaso.timesheet.service;
 
 import java.net.URI;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
+import org.reactivestreams.Publisher;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.security.oauth2.client.web.reactive.function.client.ServletOAuth2AuthorizedClientExchangeFilterFunction;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClient.RequestHeadersSpec;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriBuilder;
 
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.config.TimesheetProperties.Jira.FetchMode;
 import com.github.gbaso.timesheet.csv.WorklogRow;
+import com.github.gbaso.timesheet.service.WorklogStore.Delta;
+import com.github.gbaso.timesheet.service.WorklogStore.Snapshot;
+import com.github.gbaso.timesheet.service.WorklogStore.StoredWorklog;
 import com.github.gbaso.timesheet.utils.TimeUtils;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+import reactor.util.retry.Retry;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ApiReaderService {
 
-    private String          cloudId;
+    /**
+     * Maximum number of ids accepted by a single worklog/list request.
+     */
+    static final int                      MAX_WORKLOG_LIST_IDS = 1000;
+    /**
+     * Maximum number of results returned by a single search request.
+     */
+    static final int                      MAX_SEARCH_RESULTS   = 100;
 
-    private final WebClient webClient;
+    private static final String           SUCCESS              = "SUCCESS";
+    private static final String           CANCELLED            = "CANCELLED";
+
+    private final WebClient               webClient;
+    private final TimesheetProperties     properties;
+    private final WorklogStore            worklogStore;
+    private final IssueCache              issueCache;
+    private final SiteCache               siteCache;
+    private final UserCache               userCache;
+    private final ReportMetrics           reportMetrics;
+
+    record Author(String accountId, String displayName) {}
+
+    record Worklog(String id, String started, String timeSpent, Author author, String issueId) {}
+
+    record IssueWorklogs(int startAt, int maxResults, int total, List<Worklog> worklogs) {}
+
+    record WorklogEntry(Integer worklogId) {}
+
+    record WorklogsPage(List<WorklogEntry> values, long since, long until, boolean lastPage) {}
+
+    record IssueType(String name) {}
+
+    record Project(String id, String key, String name) {}
+
+    record ProjectsPage(List<Project> values) {}
+
+    record Fields(String summary, IssueType issuetype, Project project) {}
+
+    record ResultEntry(String id, String key, Fields fields) {}
+
+    record SearchResult(int startAt, int maxResults, int total, List<ResultEntry> issues) {}
+
+    /**
+     * The content of the {@link WorklogStore} for an account, as of a sync. Its version changes whenever a sync finds new, updated or deleted worklogs, so that
+     * it identifies the worklog read from it.
+     */
+    public record SyncedWorklog(JiraAccount account, Snapshot snapshot) {
+
+        public String version() {
+            return account.cloudId() + ":" + account.principal() + ":" + snapshot.version();
+        }
+
+    }
 
     public List<WorklogRow> readWorklog(Set<String> projects, String author, LocalDate from, LocalDate to) {
-        List<Integer> worklogIds = getWorklogIds(from);
-        record Author(String displayName) {}
-        record Worklog(String started, String timeSpent, Author author, String issueId) {}
+        return readWorklog(projects, Set.of(author), from, to);
+    }
+
+    public List<WorklogRow> readWorklog(Set<String> projects, Set<String> authors, LocalDate from, LocalDate to) {
+        return fetchWorklog(projects, authors, from, to).collectList().block();
+    }
+
+    /**
+     * Fetches the worklog without blocking: worklog/list batches and issue search pages are requested concurrently, up to {@code timesheet.jira.concurrency}
+     * requests at a time. When the {@link WorklogStore} is enabled, the worklog is read from the store after syncing it with Jira.
+     */
+    public Flux<WorklogRow> fetchWorklog(Set<String> projects, Set<String> authors, LocalDate from, LocalDate to) {
+        return withAccount(account -> switch (properties.getJira().getFetchMode()) {
+            case JQL -> fetchIssueWorklog(account.cloudId(), projects, authors, from, to);
+            case UPDATED -> worklogStore.isEnabled()
+                    ? fetchStoredWorklog(account, projects, authors, from, to)
+                    : fetchRemoteWorklog(account, projects, authors, from, to);
+        });
+    }
+
+    /**
+     * Same as {@link #fetchWorklog(Set, Set, LocalDate, LocalDate)}, but the worklog is read from the given sync of the store if any, e.g. the one whose version
+     * keys the cached report, rather than syncing the store again.
+     */
+    public Flux<WorklogRow> fetchWorklog(Set<String> projects, Set<String> authors, LocalDate from, LocalDate to, SyncedWorklog synced) {
+        if (synced == null) {
+            return fetchWorklog(projects, authors, from, to);
+        }
+        Assert.isTrue(synced.snapshot().covers(TimeUtils.toEpochMillis(from)), () -> "The worklog was not synced from " + from);
+        return inProjects(synced.account().cloudId(), projects).flatMapMany(inProjects -> readStore(synced.snapshot(), inProjects, authors, from, to));
+    }
+
+    /**
+     * Syncs the {@link WorklogStore} from the given date. Empty unless the worklog is read from the store.
+     */
+    public Mono<SyncedWorklog> syncWorklog(LocalDate from) {
+        if (properties.getJira().getFetchMode() != FetchMode.UPDATED || !worklogStore.isEnabled()) {
+            return Mono.empty();
+        }
+        return withAccount(account -> syncWorklog(account, from)).next();
+    }
+
+    /**
+     * Reads the sites accessible to the given client into the {@link SiteCache}, e.g. at login so that the first report of the client does not wait for them.
+     */
+    public Mono<List<JiraSite>> getSites(OAuth2AuthorizedClient authorizedClient) {
+        return Mono.deferContextual(context -> siteCache.get(getClientKey(context), getAccessibleSites().contextWrite(context)))
+                .contextWrite(Context.of(OAuth2AuthorizedClient.class, authorizedClient));
+    }
+
+    /**
+     * Searches the issues with worklogs of the authors between the given dates, then fetches the worklogs of each issue concurrently, so that the data read
+     * depends on the activity of the authors rather than of the whole site.
+     */
+    private Flux<WorklogRow> fetchIssueWorklog(String cloudId, Set<String> projects, Set<String> authors, LocalDate from, LocalDate to) {
+        return Flux.fromIterable(authors)
+                .flatMap(author -> getAccountIds(cloudId, author), properties.getJira().getConcurrency())
+                .collect(Collectors.toUnmodifiableSet())
+                .flatMapMany(authorAccountIds -> authorAccountIds.isEmpty() ? Flux.empty() : searchIssueWorklog(cloudId, projects, authorAccountIds, from, to));
+    }
+
+    private Flux<WorklogRow> searchIssueWorklog(String cloudId, Set<String> projects, Set<String> authorAccountIds, LocalDate from, LocalDate to) {
+        StringBuilder jql = new StringBuilder()
+                .append("worklogAuthor in (").append(authorAccountIds.stream().map(ApiReaderService::quote).collect(Collectors.joining(","))).append(")")
+                .append(" and worklogDate >= ").append(quote(from.toString()))
+                .append(" and worklogDate <= ").append(quote(to.toString()));
+        if (!projects.isEmpty()) {
+            jql.append(" and project in (").append(projects.stream().map(ApiReaderService::quote).collect(Collectors.joining(","))).append(")");
+        }
+        return search(cloudId, jql.toString(), MAX_SEARCH_RESULTS, 0)
+                .flatMap(e -> {
+                    var issue = toIssue(e);
+                    return getIssueWorklogs(cloudId, e.id, from, to, 0)
+                            .doOnEach(ApiReaderService::rowParsed)
+                            .filter(worklog -> authorAccountIds.contains(worklog.author.accountId))
+                            .map(worklog -> WorklogRow.builder()
+                                    .type(issue.type())
+                                    .key(issue.key())
+                                    .summary(issue.summary())
+                                    .started(parseStarted(worklog))
+                                    .timeSpent(worklog.timeSpent)
+                                    .author(worklog.author.displayName)
+                                    .issueId(e.id)
+                                    .build())
+                            .filter(row -> TimeUtils.between(row.getStarted(), from, to));
+                }, properties.getJira().getConcurrency());
+    }
+
+    /**
+     * Reads the worklogs of an issue started between the given dates, with a day of margin since the dates of the worklogs are in the time zone of their
+     * author.
+     */
+    private Flux<Worklog> getIssueWorklogs(String cloudId, String issueId, LocalDate from, LocalDate to, int startAt) {
         Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
-                .path("/ex/jira/{cloudid}/rest/api/3/worklog/list")
-                .build(getCloudId());
-        RequestHeadersSpec<?> request = webClient.post().uri(uriFunction).bodyValue(Map.of("ids", worklogIds));
-        List<Worklog> worklogs = retrieve(request, Worklog.class).toStream().toList();
-        List<WorklogRow> rows = worklogs.stream()
+                .path("/ex/jira/{cloudid}/rest/api/3/issue/{issueId}/worklog")
+                .queryParam("startAt", startAt)
+                .queryParam("startedAfter", TimeUtils.toEpochMillis(from.minusDays(1)))
+                .queryParam("startedBefore", TimeUtils.toEpochMillis(to.plusDays(2)))
+                .build(cloudId, issueId);
+        RequestHeadersSpec<?> request = webClient.get().uri(uriFunction);
+        return retrieve("issue/worklog", request, IssueWorklogs.class)
+                .next()
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Cannot read worklogs")))
+                .flatMapMany(page -> {
+                    int next = page.startAt + page.worklogs.size();
+                    Flux<Worklog> worklogs = Flux.fromIterable(page.worklogs);
+                    return page.worklogs.isEmpty() || next >= page.total ? worklogs : worklogs.concatWith(getIssueWorklogs(cloudId, issueId, from, to, next));
+                });
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * Reads the worklogs updated from the start date, resolving their issues in windows of up to {@code timesheet.jira.issue-search-batch-size} new issues
+     * while the next worklogs are read, rather than once all of them are. Windows are resolved one at a time, so that each issue is looked up once.
+     */
+    private Flux<WorklogRow> fetchRemoteWorklog(JiraAccount account, Set<String> projects, Set<String> authors, LocalDate from, LocalDate to) {
+        String cloudId = account.cloudId();
+        int batchSize = Math.min(properties.getJira().getIssueSearchBatchSize(), MAX_SEARCH_RESULTS);
+        Flux<WorklogRow> rows = getWorklogs(cloudId, getWorklogIds(cloudId, "updated", TimeUtils.toEpochMillis(from), null))
                 .map(worklog -> WorklogRow.builder()
-                        .started(LocalDate.parse(worklog.started.split("T")[0]))
+                        .started(parseStarted(worklog))
                         .timeSpent(worklog.timeSpent)
                         .author(worklog.author.displayName)
                         .issueId(worklog.issueId)
                         .build())
-                .filter(row -> StringUtils.equals(row.getAuthor(), author))
-                .filter(row -> TimeUtils.between(row.getStarted(), from, to))
-                .toList();
-        Set<String> issueIds = rows.stream().map(WorklogRow::getIssueId).collect(Collectors.toUnmodifiableSet());
-        Map<String, Issue> issues = getIssues(projects, issueIds);
-        return rows.stream().filter(row -> issues.containsKey(row.getIssueId())).map(row -> {
-            var issue = issues.get(row.getIssueId());
-            row.setType(issue.type());
-            row.setKey(issue.key());
-            row.setSummary(issue.summary());
-            return row;
-        }).toList();
-    }
-
-    private List<Integer> getWorklogIds(LocalDate from) {
+                .doOnEach(ApiReaderService::rowParsed)
+                .filter(row -> authors.contains(row.getAuthor()))
+                .filter(row -> TimeUtils.between(row.getStarted(), from, to));
+        return Flux.defer(() -> {
+            Mono<Predicate<Issue>> inProjects = inProjects(cloudId, projects).cache();
+            Set<String> windowedIssueIds = new HashSet<>();
+            var newIssueIds = new AtomicInteger();
+            Set<String> lookedUpIssueIds = new HashSet<>();
+            Map<String, Issue> issues = new HashMap<>();
+            return rows
+                    .bufferUntil(row -> windowedIssueIds.add(row.getIssueId()) && newIssueIds.incrementAndGet() % batchSize == 0)
+                    .concatMap(window -> addIssues(account, window, inProjects, lookedUpIssueIds, issues));
+        });
+    }
+
+    /**
+     * Adds their issues to the rows of a window, looking up those not looked up for the previous windows, and drops the rows whose issue is not found or not
+     * in the projects.
+     */
+    private Flux<WorklogRow> addIssues(JiraAccount account, List<WorklogRow> window, Mono<Predicate<Issue>> inProjects, Set<String> lookedUpIssueIds,
+            Map<String, Issue> issues) {
+        Set<String> issueIds = window.stream().map(WorklogRow::getIssueId).filter(lookedUpIssueIds::add).collect(Collectors.toUnmodifiableSet());
+        Mono<Map<String, Issue>> found = issueIds.isEmpty() ? Mono.just(Map.of()) : getIssues(account, Set.of(), issueIds);
+        return found.zipWith(inProjects).flatMapMany(resolved -> {
+            resolved.getT1().forEach((issueId, issue) -> {
+                if (resolved.getT2().test(issue)) {
+                    issues.put(issueId, issue);
+                }
+            });
+            return Flux.fromIterable(window).filter(row -> issues.containsKey(row.getIssueId())).map(row -> addIssue(row, issues.get(row.getIssueId())));
+        });
+    }
+
+    private static WorklogRow addIssue(WorklogRow row, Issue issue) {
+        row.setType(issue.type());
+        row.setKey(issue.key());
+        row.setSummary(issue.summary());
+        return row;
+    }
+
+    /**
+     * Syncs the store, then reads the worklog from it. Since the store holds the worklogs of every project, the issues are matched to the projects, resolved
+     * while the store is synced.
+     */
+    private Flux<WorklogRow> fetchStoredWorklog(JiraAccount account, Set<String> projects, Set<String> authors, LocalDate from, LocalDate to) {
+        return syncWorklog(account, from)
+                .zipWith(inProjects(account.cloudId(), projects))
+                .flatMapMany(synced -> readStore(synced.getT1().snapshot(), synced.getT2(), authors, from, to));
+    }
+
+    /**
+     * Syncs the store of the account. The delta of a sync is dropped if a concurrent sync of the account was applied first, whose snapshot is then returned
+     * instead; the store is synced again in the rare case that snapshot does not cover the given date.
+     */
+    private Mono<SyncedWorklog> syncWorklog(JiraAccount account, LocalDate from) {
+        long since = TimeUtils.toEpochMillis(from);
+        return Mono.fromCallable(() -> worklogStore.get(account))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(snapshot -> syncStore(account, snapshot, since))
+                .filter(snapshot -> snapshot.covers(since))
+                .map(snapshot -> new SyncedWorklog(account, snapshot))
+                .switchIfEmpty(Mono.defer(() -> syncWorklog(account, from)));
+    }
+
+    private static Flux<WorklogRow> readStore(Snapshot snapshot, Predicate<Issue> inProjects, Set<String> authors, LocalDate from, LocalDate to) {
+        return Flux.fromIterable(snapshot.worklogs().values())
+                .doOnEach(ApiReaderService::rowParsed)
+                .filter(worklog -> authors.contains(worklog.author()))
+                .filter(worklog -> TimeUtils.between(worklog.started(), from, to))
+                .filter(worklog -> snapshot.issues().containsKey(worklog.issueId()) && inProjects.test(snapshot.issues().get(worklog.issueId())))
+                .map(worklog -> {
+                    var issue = snapshot.issues().get(worklog.issueId());
+                    return WorklogRow.builder()
+                            .type(issue.type())
+                            .key(issue.key())
+                            .summary(issue.summary())
+                            .started(worklog.started())
+                            .timeSpent(worklog.timeSpent())
+                            .author(worklog.author())
+                            .issueId(worklog.issueId())
+                            .build();
+                });
+    }
+
+    /**
+     * Fetches the worklogs updated and deleted since the last sync, and the issues not stored yet. When the store does not cover the requested dates, all the
+     * worklogs updated from the start date are fetched instead, replacing the stored ones, and the deleted worklogs are then synced from the end of the
+     * updated ones. The updated and deleted worklogs are followed with separate cursors. Once {@code timesheet.jira.store-issue-time-to-live} has passed, the
+     * issues of all the worklogs are read again through the {@link IssueCache}, replacing the stored ones.
+     */
+    private Mono<Snapshot> syncStore(JiraAccount account, Snapshot snapshot, long from) {
+        String cloudId = account.cloudId();
+        boolean incremental = snapshot.covers(from);
+        boolean readIssues = !incremental
+                || snapshot.issuesReadAt() + properties.getJira().getStoreIssueTimeToLive().toMillis() <= System.currentTimeMillis();
+        long since = incremental ? snapshot.until() : from;
+        var until = new AtomicLong(since);
+        long deletedSince = snapshot.deletedSince();
+        var deletedUntil = new AtomicLong(deletedSince);
+        Mono<Map<Integer, StoredWorklog>> updated = getWorklogs(cloudId, getWorklogIds(cloudId, "updated", since, until))
+                .collectMap(worklog -> Integer.valueOf(worklog.id),
+                        worklog -> new StoredWorklog(worklog.issueId, parseStarted(worklog), worklog.timeSpent, worklog.author.displayName));
+        Mono<Set<Integer>> deleted = incremental
+                ? getWorklogIds(cloudId, "deleted", deletedSince, deletedUntil).collect(Collectors.toUnmodifiableSet())
+                : Mono.just(Set.of());
+        return Mono.zip(updated, deleted)
+                .flatMap(changes -> {
+                    Stream<StoredWorklog> worklogs = readIssues && incremental
+                            ? Stream.concat(snapshot.worklogs().values().stream(), changes.getT1().values().stream())
+                            : changes.getT1().values().stream();
+                    Set<String> issueIds = worklogs
+                            .map(StoredWorklog::issueId)
+                            .filter(issueId -> readIssues || !snapshot.issues().containsKey(issueId))
+                            .collect(Collectors.toUnmodifiableSet());
+                    Mono<Map<String, Issue>> issues = issueIds.isEmpty() ? Mono.just(Map.of()) : getIssues(account, Set.of(), issueIds);
+                    return issues.map(newIssues -> new Delta(incremental, since, until.get(), incremental ? deletedUntil.get() : until.get(), changes.getT1(),
+                            changes.getT2(), newIssues, readIssues));
+                })
+                .publishOn(Schedulers.boundedElastic())
+                .map(delta -> worklogStore.apply(account, delta));
+    }
+
+    /**
+     * Streams the ids of the worklogs updated or deleted since the given time, following the pages of worklog/updated or worklog/deleted until the last one, so
+     * that the first batches can be fetched before the last page arrives. The end of the last page is tracked in {@code until}, if given.
+     */
+    private Flux<Integer> getWorklogIds(String cloudId, String change, long since, AtomicLong until) {
+        return getWorklogIdsPage(cloudId, change, since)
+                .expand(page -> page.lastPage || page.until <= page.since ? Mono.empty() : getWorklogIdsPage(cloudId, change, page.until))
+                .doOnNext(page -> {
+                    if (until != null) {
+                        until.accumulateAndGet(page.until, Math::max);
+                    }
+                })
+                .concatMapIterable(WorklogsPage::values)
+                .map(WorklogEntry::worklogId);
+    }
+
+    private Mono<WorklogsPage> getWorklogIdsPage(String cloudId, String change, long since) {
         Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
-                .path("/ex/jira/{cloudid}/rest/api/3/worklog/updated")
-                .queryParam("since", TimeUtils.toEpochMillis(from))
-                .queryParam("expand", "issueId,started,timeSpent,author")
-                .build(getCloudId());
+                .path("/ex/jira/{cloudid}/rest/api/3/worklog/{change}")
+                .queryParam("since", since)
+                .build(cloudId, change);
         RequestHeadersSpec<?> request = webClient.get().uri(uriFunction);
-        record WorklogEntry(Integer worklogId) {}
-        record Worklogs(List<WorklogEntry> values) {}
-        Worklogs worklogs = retrieve(request, Worklogs.class).blockFirst();
-        Assert.notNull(worklogs, "Cannot read worklogs");
-        return worklogs.values.stream().map(WorklogEntry::worklogId).toList();
-    }
-
-    private Map<String, Issue> getIssues(Set<String> projects, Set<String> issueIds) {
-        record IssueType(String name) {}
-        record Fields(String summary, IssueType issuetype) {}
-        record ResultEntry(String id, String key, Fields fields) {}
-        record SearchResult(List<ResultEntry> issues) {}
-        List<ResultEntry> resultEntries = new ArrayList<>();
-        for (int i = 0; i < 100; i++) {
-            Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
-                    .path("/ex/jira/{cloudid}/rest/api/3/search")
-                    .queryParam("startAt", resultEntries.size())
-                    .queryParam("jql", "project in ({projects}) and id in ({issueIds})")
-                    .queryParam("fields", "summary,issuetype")
-                    .build(getCloudId(), String.join(",", projects), String.join(",", issueIds));
-            RequestHeadersSpec<?> request = webClient.get().uri(uriFunction);
-            var searchResult = retrieve(request, SearchResult.class).blockFirst();
-            Assert.notNull(searchResult, "Cannot read issues");
-            if (searchResult.issues.isEmpty()) {
-                break;
-            }
-            resultEntries.addAll(searchResult.issues);
+        return retrieve("worklog/" + change, request, WorklogsPage.class).next().switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Cannot read worklogs")));
+    }
+
+    /**
+     * Fetches the worklogs in batches of at most {@value #MAX_WORKLOG_LIST_IDS} ids, requested concurrently.
+     */
+    private Flux<Worklog> getWorklogs(String cloudId, Flux<Integer> worklogIds) {
+        var jira = properties.getJira();
+        int batchSize = Math.min(jira.getWorklogBatchSize(), MAX_WORKLOG_LIST_IDS);
+        return worklogIds.buffer(batchSize).flatMap(batch -> listWorklogs(cloudId, batch), jira.getConcurrency());
+    }
+
+    private Flux<Worklog> listWorklogs(String cloudId, List<Integer> worklogIds) {
+        Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
+                .path("/ex/jira/{cloudid}/rest/api/3/worklog/list")
+                .build(cloudId);
+        RequestHeadersSpec<?> request = webClient.post().uri(uriFunction).bodyValue(Map.of("ids", worklogIds));
+        return retrieve("worklog/list", request, Worklog.class);
+    }
+
+    private static LocalDate parseStarted(Worklog worklog) {
+        return LocalDate.parse(worklog.started.split("T")[0]);
+    }
+
+    /**
+     * Returns the given issues that belong to the given projects, or to any project if none is given. The issues not cached are searched by id in all the
+     * projects, so that the cache serves any later report, and are then matched to the projects.
+     */
+    private Mono<Map<String, Issue>> getIssues(JiraAccount account, Set<String> projects, Set<String> issueIds) {
+        Map<String, Issue> cached = issueCache.getAll(account, issueIds);
+        Set<String> missingIssueIds = issueIds.stream().filter(issueId -> !cached.containsKey(issueId)).collect(Collectors.toUnmodifiableSet());
+        Mono<Map<String, Issue>> searched = missingIssueIds.isEmpty()
+                ? Mono.just(Map.of())
+                : searchIssues(account.cloudId(), missingIssueIds).doOnNext(issues -> issueCache.putAll(account, issues));
+        return Mono.zip(searched, inProjects(account.cloudId(), projects)).map(found -> {
+            Map<String, Issue> issues = found.getT1();
+            Predicate<Issue> inProjects = found.getT2();
+            Map<String, Issue> result = new HashMap<>();
+            cached.forEach((issueId, issue) -> {
+                if (inProjects.test(issue)) {
+                    result.put(issueId, issue);
+                }
+            });
+            issues.forEach((issueId, issue) -> {
+                if (inProjects.test(issue)) {
+                    result.put(issueId, issue);
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Matches the issues of the given projects, entered as in JQL by key, id or name, or of any project if none is given. The projects are resolved once per
+     * report, and the issues matched by project id, so that the same projects are matched as in JQL queries whatever their keys. Issues stored without a
+     * project id are matched by the key prefix instead. Unknown projects match no issue, as in JQL.
+     */
+    private Mono<Predicate<Issue>> inProjects(String cloudId, Set<String> projects) {
+        if (projects.isEmpty()) {
+            return Mono.just(issue -> true);
         }
-        return resultEntries.stream()
+        return Flux.fromIterable(projects)
+                .flatMap(project -> getProject(cloudId, project), properties.getJira().getConcurrency())
+                .collectList()
+                .map(resolved -> {
+                    Set<String> projectIds = resolved.stream().map(Project::id).collect(Collectors.toUnmodifiableSet());
+                    Set<String> projectKeys = resolved.stream().map(project -> project.key().toUpperCase()).collect(Collectors.toUnmodifiableSet());
+                    return issue -> issue.projectId() != null
+                            ? projectIds.contains(issue.projectId())
+                            : projectKeys.contains(StringUtils.substringBefore(issue.key(), "-").toUpperCase());
+                });
+    }
+
+    /**
+     * Reads a project by id or key, or else searches it by name.
+     */
+    private Mono<Project> getProject(String cloudId, String project) {
+        Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
+                .path("/ex/jira/{cloudid}/rest/api/3/project/{projectIdOrKey}")
+                .build(cloudId, project);
+        RequestHeadersSpec<?> request = webClient.get().uri(uriFunction);
+        return retrieve("project", request, Project.class)
+                .next()
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())
+                .switchIfEmpty(Mono.defer(() -> searchProject(cloudId, project)));
+    }
+
+    private Mono<Project> searchProject(String cloudId, String name) {
+        Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
+                .path("/ex/jira/{cloudid}/rest/api/3/project/search")
+                .queryParam("query", "{query}")
+                .build(cloudId, name);
+        RequestHeadersSpec<?> request = webClient.get().uri(uriFunction);
+        return retrieve("project/search", request, ProjectsPage.class)
+                .next()
+                .flatMapIterable(ProjectsPage::values)
+                .filter(project -> StringUtils.equalsIgnoreCase(project.name, name))
+                .next()
+                .doOnSuccess(project -> {
+                    if (project == null) {
+                        log.warn("Unknown project {} on Jira site {}", name, cloudId);
+                    }
+                });
+    }
+
+    /**
+     * Searches the issues in chunks of ids sent in the body of POST requests, so that the query length stays bounded, and fetches the chunks concurrently. The
+     * ids not found, e.g. of deleted issues, are logged, counted in the {@link ReportProgress} of the subscriber context and left out of the result.
+     */
+    private Mono<Map<String, Issue>> searchIssues(String cloudId, Set<String> issueIds) {
+        var jira = properties.getJira();
+        int chunkSize = Math.min(jira.getIssueSearchBatchSize(), MAX_SEARCH_RESULTS);
+        return Flux.fromIterable(issueIds)
+                .buffer(chunkSize)
+                .flatMap(chunk -> search(cloudId, "id in (" + String.join(",", chunk) + ")", chunk.size(), 0), jira.getConcurrency())
                 .filter(e -> issueIds.contains(e.id))
-                .collect(Collectors.toMap(ResultEntry::id, e -> new Issue(e.key, e.fields.summary, e.fields.issuetype.name)));
+                .collectMap(ResultEntry::id, ApiReaderService::toIssue)
+                .doOnEach(signal -> {
+                    Map<String, Issue> issues = signal.get();
+                    if (signal.isOnNext() && issues.size() < issueIds.size()) {
+                        List<String> missingIssueIds = issueIds.stream().filter(issueId -> !issues.containsKey(issueId)).sorted().toList();
+                        log.warn("{} of {} issues not found on Jira site {}: {}", missingIssueIds.size(), issueIds.size(), cloudId, missingIssueIds);
+                        signal.getContextView().<ReportProgress> getOrEmpty(ReportProgress.class)
+                                .ifPresent(progress -> progress.issuesMissing(missingIssueIds.size()));
+                    }
+                });
+    }
+
+    /**
+     * Searches the issues matching a JQL query, following the next pages in case Jira returns fewer results than requested.
+     */
+    private Flux<ResultEntry> search(String cloudId, String jql, int maxResults, int startAt) {
+        Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
+                .path("/ex/jira/{cloudid}/rest/api/3/search")
+                .build(cloudId);
+        Map<String, Object> body = Map.of(
+                "jql", jql,
+                "startAt", startAt,
+                "maxResults", maxResults,
+                "fields", List.of("summary", "issuetype", "project"),
+                "validateQuery", "warn");
+        RequestHeadersSpec<?> request = webClient.post().uri(uriFunction).bodyValue(body);
+        return retrieve("search", request, SearchResult.class)
+                .next()
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Cannot read issues")))
+                .flatMapMany(result -> {
+                    int next = result.startAt + result.issues.size();
+                    Flux<ResultEntry> entries = Flux.fromIterable(result.issues);
+                    return result.issues.isEmpty() || next >= result.total ? entries : entries.concatWith(search(cloudId, jql, maxResults, next));
+                });
+    }
+
+    private static Issue toIssue(ResultEntry entry) {
+        return new Issue(entry.key, entry.fields.summary, entry.fields.issuetype.name, entry.fields.project != null ? entry.fields.project.id : null);
     }
 
-    private String getCloudId() {
-        if (this.cloudId == null) {
-            RequestHeadersSpec<?> request = webClient.get().uri(uriBuilder -> uriBuilder.path("/oauth/token/accessible-resources").build());
-            record Resource(String id) {}
-            var resource = retrieve(request, Resource.class).blockFirst();
-            Assert.notNull(resource, "Could not read accessile resources");
-            this.cloudId = resource.id;
+    /**
+     * Resolves the display name of a user to the ids of the accounts with exactly that name, cached in the {@link UserCache}. A name matching several accounts
+     * is resolved to all of them, since worklogs are reported by display name. A name matching none, e.g. of a renamed user, is left out of the report and
+     * counted in the {@link ReportProgress} of the subscriber context.
+     */
+    private Flux<String> getAccountIds(String cloudId, String displayName) {
+        Set<String> cached = userCache.get(cloudId, displayName);
+        if (cached != null) {
+            return Flux.fromIterable(cached);
         }
-        return this.cloudId;
+        Function<UriBuilder, URI> uriFunction = uriBuilder -> uriBuilder
+                .path("/ex/jira/{cloudid}/rest/api/3/user/search")
+                .queryParam("query", "{query}")
+                .build(cloudId, displayName);
+        RequestHeadersSpec<?> request = webClient.get().uri(uriFunction);
+        return retrieve("user/search", request, Author.class)
+                .filter(user -> StringUtils.equals(user.displayName, displayName))
+                .map(Author::accountId)
+                .collect(Collectors.toUnmodifiableSet())
+                .flatMapMany(accountIds -> Flux.deferContextual(context -> {
+                    if (accountIds.isEmpty()) {
+                        log.warn("No Jira user named {} on site {}, left out of the report", displayName, cloudId);
+                        context.<ReportProgress> getOrEmpty(ReportProgress.class).ifPresent(progress -> progress.authorUnresolved(displayName));
+                        return Flux.empty();
+                    }
+                    if (accountIds.size() > 1) {
+                        log.warn("{} Jira users named {} on site {}, reporting all of them", accountIds.size(), displayName, cloudId);
+                    }
+                    userCache.put(cloudId, displayName, accountIds);
+                    return Flux.fromIterable(accountIds);
+                }));
+    }
+
+    /**
+     * Applies the function to the account of the principal of the authorized client of the subscriber context on its site, or of the default client if none.
+     * The sites of each client are cached, and read again if the site answers 401 Unauthorized or 403 Forbidden, e.g. after the client lost access to it. A
+     * 404 Not Found is about a single resource, such as an issue, and keeps the sites.
+     */
+    private <T> Flux<T> withAccount(Function<JiraAccount, Publisher<T>> function) {
+        return Flux.deferContextual(context -> {
+            String clientKey = getClientKey(context);
+            String principal = context.<OAuth2AuthorizedClient> getOrEmpty(OAuth2AuthorizedClient.class)
+                    .map(OAuth2AuthorizedClient::getPrincipalName)
+                    .orElse("");
+            return siteCache.get(clientKey, getAccessibleSites().contextWrite(context))
+                    .map(this::selectSite)
+                    .flatMapMany(site -> function.apply(new JiraAccount(site.id(), principal)))
+                    .doOnError(e -> e instanceof WebClientResponseException.Unauthorized || e instanceof WebClientResponseException.Forbidden,
+                            e -> siteCache.invalidate(clientKey));
+        });
     }
 
-    <T> Flux<T> retrieve(RequestHeadersSpec<?> request, Class<T> responseClass) {
-        return retrieve(request, ParameterizedTypeReference.forType(responseClass));
+    /**
+     * Clients are told apart by their registration and principal rather than by their access token, so that the sites outlive a refreshed token.
+     */
+    private static String getClientKey(ContextView context) {
+        return context.<OAuth2AuthorizedClient> getOrEmpty(OAuth2AuthorizedClient.class)
+                .map(client -> client.getClientRegistration().getRegistrationId() + ":" + client.getPrincipalName())
+                .orElse("");
     }
 
-    <T> Flux<T> retrieve(RequestHeadersSpec<?> request, ParameterizedTypeReference<T> responseTypeRef) {
-        return request
-                .accept(MediaType.APPLICATION_JSON)
-                .attributes(ServletOAuth2AuthorizedClientExchangeFilterFunction.clientRegistrationId("jira"))
-                .retrieve()
-                .bodyToFlux(responseTypeRef);
+    private Mono<List<JiraSite>> getAccessibleSites() {
+        RequestHeadersSpec<?> request = webClient.get().uri(uriBuilder -> uriBuilder.path("/oauth/token/accessible-resources").build());
+        return retrieve("accessible-resources", request, JiraSite.class)
+                .collectList()
+                .filter(sites -> !sites.isEmpty())
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("No accessible Jira sites")));
+    }
+
+    /**
+     * The site named by {@code timesheet.jira.site}, or the first one if not set.
+     */
+    private JiraSite selectSite(List<JiraSite> sites) {
+        String site = properties.getJira().getSite();
+        if (site == null) {
+            return sites.get(0);
+        }
+        return sites.stream()
+                .filter(s -> StringUtils.equalsAnyIgnoreCase(site, s.url(), s.name()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Jira site " + site + " is not accessible"));
+    }
+
+    <T> Flux<T> retrieve(String endpoint, RequestHeadersSpec<?> request, Class<T> responseClass) {
+        return retrieve(endpoint, request, ParameterizedTypeReference.forType(responseClass));
+    }
+
+    /**
+     * Performs the request when subscribed, retrying with exponential backoff when rejected with 429 Too Many Requests. Requests are authorized with the
+     * {@link OAuth2AuthorizedClient} of the subscriber context if any, as needed off the request thread, and each response read is counted in the
+     * {@link ReportProgress} of the subscriber context if any. Each attempt is timed in the {@link ReportMetrics}, tagged with the given endpoint, and in the
+     * progress.
+     */
+    <T> Flux<T> retrieve(String endpoint, RequestHeadersSpec<?> request, ParameterizedTypeReference<T> responseTypeRef) {
+        var jira = properties.getJira();
+        Flux<T> response = Flux.deferContextual(context -> {
+            var timing = new RequestTiming(endpoint, context);
+            return request
+                    .accept(MediaType.APPLICATION_JSON)
+                    .attributes(context.<OAuth2AuthorizedClient> getOrEmpty(OAuth2AuthorizedClient.class)
+                            .map(ServletOAuth2AuthorizedClientExchangeFilterFunction::oauth2AuthorizedClient)
+                            .orElseGet(() -> ServletOAuth2AuthorizedClientExchangeFilterFunction.clientRegistrationId("jira")))
+                    .retrieve()
+                    .bodyToFlux(responseTypeRef)
+                    .doOnNext(value -> timing.responded())
+                    .doOnComplete(() -> timing.completed(SUCCESS))
+                    .doOnError(e -> timing.completed(outcome(e)))
+                    .doOnCancel(timing::cancelled);
+        });
+        return response.retryWhen(Retry.backoff(jira.getMaxRetries(), jira.getMinBackoff())
+                .filter(WebClientResponseException.TooManyRequests.class::isInstance)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * The series of the status of a failed response, e.g. {@code CLIENT_ERROR}, or {@code UNKNOWN} if no response was received.
+     */
+    private static String outcome(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            HttpStatus.Series series = HttpStatus.Series.resolve(responseException.getRawStatusCode());
+            if (series != null) {
+                return series.name();
+            }
+        }
+        return "UNKNOWN";
+    }
+
+    /**
+     * Counts a worklog read from Jira or from the store in the {@link ReportProgress} of the subscriber context if any, before it is filtered.
+     */
+    private static void rowParsed(Signal<?> signal) {
+        if (signal.isOnNext()) {
+            signal.getContextView().<ReportProgress> getOrEmpty(ReportProgress.class).ifPresent(ReportProgress::rowParsed);
+        }
+    }
+
+    /**
+     * Times an attempt of a request from its subscription, recording it once in the {@link ReportMetrics}, and in the {@link ReportProgress} of the subscriber
+     * context if any.
+     */
+    @RequiredArgsConstructor
+    private class RequestTiming {
+
+        private final String        endpoint;
+        private final ContextView   context;
+        private final long          start     = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile boolean    responded;
+
+        void responded() {
+            responded = true;
+        }
+
+        /**
+         * Requests cancelled once they responded, e.g. by next() after the first value is read, are successful.
+         */
+        void cancelled() {
+            completed(responded ? SUCCESS : CANCELLED);
+        }
+
+        void completed(String outcome) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            reportMetrics.recordJiraRequest(endpoint, outcome, nanos);
+            context.<ReportProgress> getOrEmpty(ReportProgress.class).ifPresent(progress -> {
+                progress.requestCompleted(nanos);
+                if (SUCCESS.equals(outcome)) {
+                    progress.pageFetched();
+                }
+            });
+        }
+
     }
 
 }
@@ -1,32 +1,220 @@
 package com.github.gbaso.timesheet.service;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
 
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.csv.CsvChunker;
+import com.github.gbaso.timesheet.csv.CsvChunker.Chunk;
+import com.github.gbaso.timesheet.csv.CsvUpload.RowLimit;
+import com.github.gbaso.timesheet.csv.JiraColumn;
+import com.github.gbaso.timesheet.csv.JiraCsvParser;
+import com.github.gbaso.timesheet.csv.JiraCsvRecord;
 import com.github.gbaso.timesheet.csv.WorklogRow;
 import com.github.gbaso.timesheet.utils.TimeUtils;
 import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
 
-import lombok.RequiredArgsConstructor;
-
 @Service
-@RequiredArgsConstructor
-public class CsvReaderService {
+public class CsvReaderService implements DisposableBean {
+
+    private static final long         MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final long         MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+
+    private final TimesheetProperties properties;
+    private final ThreadPoolExecutor  executor;
+
+    public CsvReaderService(TimesheetProperties properties) {
+        this.properties = properties;
+        var config = properties.getCsv();
+        var threadFactory = new CustomizableThreadFactory("csv-");
+        threadFactory.setDaemon(true);
+        // the chunks over the queue capacity are parsed by the thread reading the file, which slows down the files read at the same time
+        this.executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()), threadFactory, new CallerRunsPolicy());
+    }
 
     public List<WorklogRow> readWorklog(InputStream inputStream, String author, LocalDate from, LocalDate to) throws IOException {
+        List<WorklogRow> rows = new ArrayList<>();
+        readWorklog(inputStream, Set.of(author), from, to, new ReportProgress(), new RowLimit(Long.MAX_VALUE), rows::add);
+        return rows;
+    }
+
+    public void readWorklog(InputStream inputStream, String author, LocalDate from, LocalDate to, Timesheet timesheet) throws IOException {
+        checkDates(timesheet, from, to);
+        readWorklog(inputStream, TeamTimesheet.of(author, timesheet));
+    }
+
+    public void readWorklog(Path file, String author, LocalDate from, LocalDate to, Timesheet timesheet) throws IOException {
+        checkDates(timesheet, from, to);
+        readWorklog(file, TeamTimesheet.of(author, timesheet));
+    }
+
+    /**
+     * Reads the worklog of all the authors of the team into their timesheets, one record at a time. The Jira export layout is read by {@link JiraCsvParser}, any
+     * other layout is bound to {@link WorklogRow} beans.
+     */
+    public void readWorklog(InputStream inputStream, TeamTimesheet team) throws IOException {
+        readWorklog(inputStream, team, new RowLimit(Long.MAX_VALUE));
+    }
+
+    /**
+     * Same as {@link #readWorklog(InputStream, TeamTimesheet)}, failing once the records read are over the given limit.
+     */
+    public void readWorklog(InputStream inputStream, TeamTimesheet team, RowLimit rowLimit) throws IOException {
+        try (var bufferedStream = new BufferedInputStream(inputStream)) {
+            byte[] header = JiraCsvParser.readHeader(bufferedStream);
+            Optional<JiraCsvParser> parser = JiraCsvParser.forHeader(header);
+            if (parser.isPresent()) {
+                byte[][] authors = encodeAuthors(team);
+                parser.get().parse(bufferedStream, record -> {
+                    rowLimit.rowRead();
+                    addRecord(record, authors, team);
+                });
+            } else {
+                var replayedStream = new SequenceInputStream(new ByteArrayInputStream(header), bufferedStream);
+                readWorklog(replayedStream, Set.copyOf(team.getAuthors()), team.getFrom(), team.getTo(), team.getProgress(), rowLimit,
+                        row -> addRow(row, team));
+            }
+        }
+    }
+
+    /**
+     * Reads the worklog of a file into the timesheets of the team. Files in the Jira export layout are memory-mapped in record-aligned chunks of at most
+     * 256 MB, which are parsed in place. The mappings are only released once garbage collected, so chunks are bounded to keep the address space held by the
+     * parsed ones small. Large files are parsed in parallel on a pool of {@code timesheet.csv.threads} threads shared by all the files, each task aggregating a
+     * run of consecutive chunks into a partial timesheet, then the partial timesheets are merged.
+     */
+    public void readWorklog(Path file, TeamTimesheet team) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            byte[] header = JiraCsvParser.readHeader(new BufferedInputStream(Channels.newInputStream(channel)));
+            Optional<JiraCsvParser> parser = JiraCsvParser.forHeader(header);
+            if (parser.isEmpty()) {
+                try (var inputStream = Files.newInputStream(file)) {
+                    readWorklog(inputStream, team);
+                }
+                return;
+            }
+            long size = channel.size();
+            int parallelism = (int) Math.max(1, Math.min(properties.getCsv().getMaxParallelism(), size / MIN_CHUNK_SIZE));
+            int chunkCount = (int) Math.max(parallelism, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+            List<Chunk> chunks = CsvChunker.split(channel, header.length, chunkCount, executor);
+            byte[][] authors = encodeAuthors(team);
+            if (parallelism == 1) {
+                readChunks(parser.get(), channel, chunks, authors, team);
+                return;
+            }
+            int chunksPerTask = (chunks.size() + parallelism - 1) / parallelism;
+            List<CompletableFuture<TeamTimesheet>> tasks = new ArrayList<>(parallelism);
+            for (int i = 0; i < chunks.size(); i += chunksPerTask) {
+                List<Chunk> taskChunks = chunks.subList(i, Math.min(i + chunksPerTask, chunks.size()));
+                tasks.add(CompletableFuture.supplyAsync(() -> {
+                    var partial = team.emptyCopy();
+                    readChunks(parser.get(), channel, taskChunks, authors, partial);
+                    return partial;
+                }, executor));
+            }
+            try {
+                for (CompletableFuture<TeamTimesheet> task : tasks) {
+                    team.merge(task.join());
+                }
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException cause) {
+                    throw cause.getCause();
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static void checkDates(Timesheet timesheet, LocalDate from, LocalDate to) {
+        Assert.isTrue(timesheet.getFrom().equals(from) && timesheet.getTo().equals(to), "The timesheet does not span the given dates");
+    }
+
+    private static byte[][] encodeAuthors(TeamTimesheet team) {
+        return team.getAuthors().stream().map(author -> author.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    }
+
+    private void readChunks(JiraCsvParser parser, FileChannel channel, List<Chunk> chunks, byte[][] authors, TeamTimesheet team) {
+        for (Chunk chunk : chunks) {
+            try {
+                parser.parse(CsvChunker.map(channel, chunk), record -> addRecord(record, authors, team));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void addRecord(JiraCsvRecord record, byte[][] authors, TeamTimesheet team) {
+        team.getProgress().rowParsed();
+        if (record.isBlank(JiraColumn.STARTED)) {
+            return;
+        }
+        int author = record.indexOf(JiraColumn.AUTHOR, authors);
+        if (author < 0) {
+            return;
+        }
+        LocalDate started = record.getDate(JiraColumn.STARTED);
+        if (TimeUtils.between(started, team.getFrom(), team.getTo())) {
+            var worklog = properties.getWorklog();
+            int minutes = TimeUtils.parseMinutes(record.getAscii(JiraColumn.TIME_SPENT), worklog.getHoursPerDay(), worklog.getDaysPerWeek());
+            team.add(author, record.getString(JiraColumn.KEY), record.getString(JiraColumn.SUMMARY), started, minutes);
+        }
+    }
+
+    private void addRow(WorklogRow row, TeamTimesheet team) {
+        var worklog = properties.getWorklog();
+        int minutes = TimeUtils.parseMinutes(row.getTimeSpent(), worklog.getHoursPerDay(), worklog.getDaysPerWeek());
+        team.add(row.getAuthor(), row.getKey(), row.getSummary(), row.getStarted(), minutes);
+    }
+
+    private void readWorklog(InputStream inputStream, Set<String> authors, LocalDate from, LocalDate to, ReportProgress progress, RowLimit rowLimit,
+            Consumer<WorklogRow> consumer) throws IOException {
         try (var reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
             CsvToBeanBuilder<WorklogRow> beanBuilder = new CsvToBeanBuilder<>(reader);
             beanBuilder.withType(WorklogRow.class);
             CsvToBean<WorklogRow> build = beanBuilder.withFilter(lines -> StringUtils.isNotBlank(lines[3])).build();
-            return build.stream().filter(r -> StringUtils.equals(r.getAuthor(), author)).filter(r -> TimeUtils.between(r.getStarted(), from, to)).toList();
+            for (WorklogRow row : build) {
+                rowLimit.rowRead();
+                progress.rowParsed();
+                if (authors.contains(row.getAuthor()) && TimeUtils.between(row.getStarted(), from, to)) {
+                    consumer.accept(row);
+                }
+            }
         }
     }
 
@@ -1,5 +1,8 @@
 package com.github.gbaso.timesheet.service;
 
-public record Issue(String key, String summary, String type) {
+/**
+ * An issue as read from Jira. The project id is {@code null} for issues stored before it was read.
+ */
+public record Issue(String key, String summary, String type, String projectId) {
 
 }
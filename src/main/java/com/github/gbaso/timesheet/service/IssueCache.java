@@ -0,0 +1,70 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * In-process cache of the issues read from Jira, bounded in size and time. Issues are cached per {@link JiraAccount}, since a principal must not see the
+ * issues read with the permissions of another one. Hits, misses and evictions are published as the {@code cache.*} metrics tagged with
+ * {@code cache=jira.issues}.
+ */
+@Component
+public class IssueCache {
+
+    static final String                  NAME = "jira.issues";
+
+    private final Cache<IssueKey, Issue> cache;
+
+    record IssueKey(JiraAccount account, String issueId) {}
+
+    public IssueCache(TimesheetProperties properties, MeterRegistry meterRegistry) {
+        var jira = properties.getJira();
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(jira.getIssueCacheTimeToLive())
+                .maximumSize(jira.getIssueCacheMaximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Returns the cached issues among the given ones, by id.
+     */
+    public Map<String, Issue> getAll(JiraAccount account, Set<String> issueIds) {
+        Map<String, Issue> issues = new HashMap<>();
+        cache.getAllPresent(issueIds.stream().map(issueId -> new IssueKey(account, issueId)).toList())
+                .forEach((key, issue) -> issues.put(key.issueId(), issue));
+        return issues;
+    }
+
+    public void putAll(JiraAccount account, Map<String, Issue> issues) {
+        issues.forEach((issueId, issue) -> cache.put(new IssueKey(account, issueId), issue));
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admission control of the reports built on request, by an estimate of their cost. Reports are admitted while the total cost of the reports being built stays
+ * within {@code timesheet.admission.max-cost}, and within {@code timesheet.admission.max-user-cost} for each user. Reports over the budget of their user are
+ * rejected at once, reports over the global budget wait in a queue of at most {@code timesheet.admission.max-queue-length} reports, for at most
+ * {@code timesheet.admission.max-wait}, unless they are admitted with {@link #tryAdmit(String, int)}, which rejects them at once. The reports queued, the cost
+ * in use and the rejections are published as the {@code timesheet.admission.*} metrics.
+ */
+@Slf4j
+@Component
+public class ReportAdmission {
+
+    static final String                QUEUE         = "timesheet.admission.queue";
+    static final String                COST          = "timesheet.admission.cost";
+    static final String                REJECTED      = "timesheet.admission.rejected";
+
+    private static final int           DAYS_PER_COST = 31;
+
+    private final TimesheetProperties  properties;
+    private final MeterRegistry        meterRegistry;
+    private final int                  maxCost;
+    private final Semaphore            budget;
+    private final AtomicInteger        queued        = new AtomicInteger();
+    private final Map<String, Integer> userCosts     = new HashMap<>();
+
+    public ReportAdmission(TimesheetProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.maxCost = properties.getAdmission().getMaxCost();
+        this.budget = new Semaphore(maxCost, true);
+        Gauge.builder(QUEUE, queued, AtomicInteger::get)
+                .description("Reports waiting to be admitted")
+                .register(meterRegistry);
+        Gauge.builder(COST, budget, b -> maxCost - b.availablePermits())
+                .description("Total cost of the reports being built")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.getAdmission().isEnabled();
+    }
+
+    /**
+     * The estimated cost of a report: a unit per month of its dates, plus a unit per {@code timesheet.admission.upload-size-per-cost} of its upload, capped to
+     * the budgets so that any report can be built on its own.
+     */
+    public int cost(LocalDate from, LocalDate to, long uploadSize) {
+        var config = properties.getAdmission();
+        long days = Math.max(1, to.toEpochDay() - from.toEpochDay() + 1);
+        long cost = (days + DAYS_PER_COST - 1) / DAYS_PER_COST;
+        if (uploadSize > 0) {
+            long sizePerCost = config.getUploadSizePerCost().toBytes();
+            cost += (uploadSize + sizePerCost - 1) / sizePerCost;
+        }
+        return (int) Math.min(cost, Math.min(maxCost, config.getMaxUserCost()));
+    }
+
+    /**
+     * Admits a report of the given user and cost, waiting in the queue if the global budget is exhausted. The returned permit must be released once the report
+     * is built.
+     *
+     * @throws RejectedException if the report is over the budget of the user, the queue is full, or the report waited too long
+     */
+    public Permit admit(String user, int cost) throws InterruptedException {
+        reserveUserCost(user, cost);
+        boolean admitted = false;
+        try {
+            admitted = budget.tryAcquire(cost, 0, TimeUnit.MILLISECONDS) || await(cost);
+        } finally {
+            if (!admitted) {
+                releaseUserCost(user, cost);
+            }
+        }
+        return new Permit(user, cost);
+    }
+
+    /**
+     * Admits a report of the given user and cost without waiting, for the callers that must not block their thread. The returned permit must be released once
+     * the report is built.
+     *
+     * @throws RejectedException if the report is over the budget of the user, or the global budget is exhausted
+     */
+    public Permit tryAdmit(String user, int cost) throws InterruptedException {
+        reserveUserCost(user, cost);
+        boolean admitted = false;
+        try {
+            // a zero timeout honors the fairness of the budget, so the reports queued are not overtaken
+            admitted = budget.tryAcquire(cost, 0, TimeUnit.MILLISECONDS);
+            if (!admitted) {
+                throw reject("busy", "Too many reports being built");
+            }
+        } finally {
+            if (!admitted) {
+                releaseUserCost(user, cost);
+            }
+        }
+        return new Permit(user, cost);
+    }
+
+    private boolean await(int cost) throws InterruptedException {
+        var config = properties.getAdmission();
+        if (queued.incrementAndGet() > config.getMaxQueueLength()) {
+            queued.decrementAndGet();
+            throw reject("queue", "Too many reports waiting");
+        }
+        try {
+            if (!budget.tryAcquire(cost, config.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw reject("timeout", "Too many reports being built");
+            }
+            return true;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private void reserveUserCost(String user, int cost) {
+        synchronized (userCosts) {
+            int userCost = userCosts.getOrDefault(user, 0) + cost;
+            if (userCost > properties.getAdmission().getMaxUserCost()) {
+                throw reject("user", "Too many reports being built for the user");
+            }
+            userCosts.put(user, userCost);
+        }
+    }
+
+    private void releaseUserCost(String user, int cost) {
+        synchronized (userCosts) {
+            userCosts.computeIfPresent(user, (u, userCost) -> userCost > cost ? userCost - cost : null);
+        }
+    }
+
+    private RejectedException reject(String reason, String message) {
+        Counter.builder(REJECTED)
+                .description("Reports rejected by the admission control")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.debug("Report rejected: {}", message);
+        return new RejectedException(message, properties.getAdmission().getRetryAfter());
+    }
+
+    /**
+     * The cost of an admitted report, held until released.
+     */
+    public class Permit {
+
+        private final String        user;
+        private final int           cost;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(String user, int cost) {
+            this.user = user;
+            this.cost = cost;
+        }
+
+        /**
+         * Releases the cost of the report, only once.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                budget.release(cost);
+                releaseUserCost(user, cost);
+            }
+        }
+
+    }
+
+    /**
+     * Thrown when a report is not admitted, with the delay after which the client may retry.
+     */
+    @Getter
+    public static class RejectedException extends RuntimeException {
+
+        private final Duration retryAfter;
+
+        RejectedException(String message, Duration retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Disk cache of rendered reports in {@code timesheet.report.cache-directory}, keyed by a hash of the data and the parameters of each report, so that the same
+ * report is rendered only once. The least recently used reports are deleted once the cache exceeds {@code timesheet.report.cache-max-size}; the last modified
+ * time of each file records its last use, so that the order survives restarts.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReportCache {
+
+    private static final String       EXTENSION = ".xlsx";
+    private static final Pattern      FILE_NAME = Pattern.compile("([0-9a-f]{64})(\\.xlsx|\\d*\\.tmp)");
+
+    private final TimesheetProperties properties;
+
+    /**
+     * Sizes of the cached reports by key, from the least to the most recently used, loaded from the directory on first use.
+     */
+    private Map<String, Long>         entries;
+    private long                      size;
+
+    public record CachedReport(InputStream inputStream, long size) {}
+
+    /**
+     * Renders a report to be cached.
+     */
+    @FunctionalInterface
+    public interface ReportSupplier {
+
+        ReportWriter get() throws IOException;
+
+    }
+
+    public boolean isEnabled() {
+        return properties.getReport().getCacheDirectory() != null;
+    }
+
+    /**
+     * A key identifying the given parts, in order.
+     */
+    public static String key(List<?> parts) {
+        MessageDigest digest = sha256();
+        for (Object part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hashes the content of a stream, which is read to the end and closed.
+     */
+    public static String hash(InputStream inputStream) throws IOException {
+        MessageDigest digest = sha256();
+        try (var digestStream = new DigestInputStream(inputStream, digest)) {
+            digestStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Opens the cached report with the given key, rendering and caching it first if missing. The report is opened before it can be evicted, so that it can be
+     * read to the end. Concurrent requests for a missing report may render it more than once.
+     */
+    public CachedReport open(String key, ReportSupplier supplier) throws IOException {
+        CachedReport cached = open(key);
+        if (cached != null) {
+            return cached;
+        }
+        Path directory = getDirectory();
+        Path tempFile = Files.createTempFile(directory, key, ".tmp");
+        try {
+            ReportWriter report = supplier.get();
+            try (var outputStream = Files.newOutputStream(tempFile)) {
+                report.writeTo(outputStream);
+            }
+            Files.move(tempFile, directory.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return add(key);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private synchronized CachedReport open(String key) throws IOException {
+        Long cachedSize = getEntries().get(key);
+        if (cachedSize == null) {
+            return null;
+        }
+        Path file = getDirectory().resolve(key + EXTENSION);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return new CachedReport(Files.newInputStream(file), cachedSize);
+    }
+
+    private synchronized CachedReport add(String key) throws IOException {
+        Path file = getDirectory().resolve(key + EXTENSION);
+        long fileSize = Files.size(file);
+        Long previous = getEntries().put(key, fileSize);
+        size += fileSize - (previous != null ? previous : 0);
+        var report = new CachedReport(Files.newInputStream(file), fileSize);
+        evict(key);
+        return report;
+    }
+
+    /**
+     * Deletes the least recently used reports until the cache fits its maximum size, except the given one.
+     */
+    private void evict(String keep) {
+        long maxSize = properties.getReport().getCacheMaxSize().toBytes();
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(getDirectory().resolve(entry.getKey() + EXTENSION));
+            } catch (IOException e) {
+                log.warn("Cannot delete cached report {}", entry.getKey(), e);
+                continue;
+            }
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    private Map<String, Long> getEntries() throws IOException {
+        if (entries == null) {
+            entries = new LinkedHashMap<>(16, 0.75f, true);
+            Path directory = getDirectory();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.sorted(Comparator.comparing(ReportCache::getLastModifiedTime)).toList()) {
+                    var matcher = FILE_NAME.matcher(file.getFileName().toString());
+                    if (!matcher.matches()) {
+                        continue;
+                    }
+                    if (matcher.group(2).equals(EXTENSION)) {
+                        long fileSize = Files.size(file);
+                        entries.put(matcher.group(1), fileSize);
+                        size += fileSize;
+                    } else {
+                        // left over by a rendering interrupted by a restart
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private Path getDirectory() throws IOException {
+        return Files.createDirectories(properties.getReport().getCacheDirectory().toAbsolutePath().normalize());
+    }
+
+    private static FileTime getLastModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A report generated in the background by {@link ReportJobService}. The result is a temporary file, available once the job is {@link Status#DONE} and until the
+ * job expires, and only to the principal who submitted the job.
+ */
+@Getter
+public class ReportJob {
+
+    private final String          id;
+    private final String          fileName;
+    private final String          owner;
+    private final Instant         submittedAt;
+    private final ReportProgress  progress = new ReportProgress();
+    private volatile Status       status   = Status.QUEUED;
+    private volatile Instant      completedAt;
+    private volatile String       error;
+    @Getter(AccessLevel.NONE)
+    private volatile Path         result;
+
+    ReportJob(String id, String fileName, String owner, Instant submittedAt) {
+        this.id = id;
+        this.fileName = fileName;
+        this.owner = owner;
+        this.submittedAt = submittedAt;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void complete(Path result, Instant completedAt) {
+        this.result = result;
+        this.completedAt = completedAt;
+        this.status = Status.DONE;
+    }
+
+    void fail(String error, Instant completedAt) {
+        this.error = error;
+        this.completedAt = completedAt;
+        this.status = Status.FAILED;
+    }
+
+    /**
+     * The file of the report, or {@code null} unless the job is {@link Status#DONE}.
+     */
+    public Path getResult() {
+        return status == Status.DONE ? result : null;
+    }
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+}
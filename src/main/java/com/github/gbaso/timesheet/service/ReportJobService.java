@@ -0,0 +1,163 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.utils.VirtualThreads;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generates reports in the background on a bounded pool of {@code timesheet.jobs.concurrency} workers, so that requests return as soon as the job is queued.
+ * Results are written to temporary files, deleted along with their jobs after {@code timesheet.jobs.result-time-to-live}.
+ */
+@Slf4j
+@Service
+public class ReportJobService implements DisposableBean {
+
+    private final TimesheetProperties    properties;
+    private final ThreadPoolExecutor     executor;
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+
+    public ReportJobService(TimesheetProperties properties) {
+        this.properties = properties;
+        var config = properties.getJobs();
+        ThreadFactory threadFactory = properties.getThreads().isVirtual() ? VirtualThreads.factory("report-job-") : new CustomizableThreadFactory("report-job-");
+        this.executor = new ThreadPoolExecutor(config.getConcurrency(), config.getConcurrency(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()), threadFactory);
+    }
+
+    /**
+     * Queues the generation of a report on behalf of the given principal.
+     *
+     * @throws RejectedExecutionException if all the workers are busy and the queue is full
+     */
+    public ReportJob submit(String fileName, String owner, ReportTask task) {
+        return submit(fileName, owner, task, () -> {});
+    }
+
+    /**
+     * Same as {@link #submit(String, String, ReportTask)}, running {@code onCompletion} once the job completes or fails, e.g. to release its admission
+     * permit. It is not run if the job is rejected.
+     */
+    public ReportJob submit(String fileName, String owner, ReportTask task, Runnable onCompletion) {
+        Assert.hasText(owner, "Report jobs need an owner");
+        var job = new ReportJob(UUID.randomUUID().toString(), fileName, owner, Instant.now());
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> {
+                try {
+                    run(job, task);
+                } finally {
+                    onCompletion.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * The job with the given id, if submitted by the given principal: the jobs of other principals are not found, rather than forbidden, so that their ids are
+     * not disclosed.
+     */
+    public Optional<ReportJob> getJob(String id, String owner) {
+        return Optional.ofNullable(jobs.get(id)).filter(job -> job.getOwner().equals(owner));
+    }
+
+    /**
+     * Deletes the jobs completed for longer than {@code timesheet.jobs.result-time-to-live}, along with their results.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void expireJobs() {
+        Instant expiry = Instant.now().minus(properties.getJobs().getResultTimeToLive());
+        jobs.values().removeIf(job -> {
+            if (job.getCompletedAt() == null || job.getCompletedAt().isAfter(expiry)) {
+                return false;
+            }
+            delete(job.getResult());
+            return true;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        jobs.values().forEach(job -> delete(job.getResult()));
+    }
+
+    private void run(ReportJob job, ReportTask task) {
+        job.start();
+        Path result = null;
+        try {
+            result = Files.createTempFile("report-job", ".xlsx");
+            ReportWriter report = task.generate(job.getProgress());
+            try (var outputStream = Files.newOutputStream(result)) {
+                report.writeTo(outputStream);
+            }
+            job.complete(result, Instant.now());
+        } catch (Exception e) {
+            log.warn("Report job {} failed", job.getId(), e);
+            delete(result);
+            job.fail(e.getMessage(), Instant.now());
+        }
+    }
+
+    private static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Cannot delete {}", file, e);
+        }
+    }
+
+    /**
+     * Reads the worklog of a report, counting it in the given progress, and returns the writer of the report.
+     */
+    @FunctionalInterface
+    public interface ReportTask {
+
+        ReportWriter generate(ReportProgress progress) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Meters of the report pipeline, published on the actuator metrics endpoint:
+ * <ul>
+ * <li>{@code timesheet.report.stage}, the time spent by the reports reading the worklog, converting it into a workbook and writing the workbook, tagged by
+ * {@code source} and {@code stage}</li>
+ * <li>{@code timesheet.report.rows}, the worklogs read, tagged by {@code source} and by {@code result}, either aggregated or filtered out</li>
+ * <li>{@code timesheet.report.cells} and {@code timesheet.report.bytes}, the size of the reports written, tagged by {@code source}</li>
+ * <li>{@code timesheet.report.temp.file}, the size of the uploads moved to temporary files, tagged by {@code source}</li>
+ * <li>{@code timesheet.jira.requests}, the latency of the requests to Jira, tagged by {@code endpoint} and {@code outcome}</li>
+ * </ul>
+ */
+@Component
+@RequiredArgsConstructor
+public class ReportMetrics {
+
+    static final String         STAGE         = "timesheet.report.stage";
+    static final String         ROWS          = "timesheet.report.rows";
+    static final String         CELLS         = "timesheet.report.cells";
+    static final String         BYTES         = "timesheet.report.bytes";
+    static final String         TEMP_FILE     = "timesheet.report.temp.file";
+    static final String         JIRA_REQUESTS = "timesheet.jira.requests";
+
+    private final MeterRegistry meterRegistry;
+
+    public enum Source {
+        FILE, SERVER_FILE, API;
+
+        String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    public enum Stage {
+        READ, CONVERT, WRITE;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Starts timing a report reading its worklog from the given source, counting its rows and cells in the given progress.
+     */
+    public ReportTrace trace(Source source, ReportProgress progress) {
+        return new ReportTrace(this, source, progress);
+    }
+
+    public void recordTempFile(Source source, long size) {
+        DistributionSummary.builder(TEMP_FILE)
+                .description("Size of the uploads moved to temporary files")
+                .baseUnit(BaseUnits.BYTES)
+                .tag("source", source.tag())
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    /**
+     * Records a request to Jira, from its subscription until its response is read, or until it fails or is cancelled.
+     */
+    public void recordJiraRequest(String endpoint, String outcome, long nanos) {
+        Timer.builder(JIRA_REQUESTS)
+                .description("Latency of the requests to Jira")
+                .tags("endpoint", endpoint, "outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordStage(Source source, Stage stage, long nanos) {
+        Timer.builder(STAGE)
+                .description("Time spent by the reports in each stage")
+                .tags("source", source.tag(), "stage", stage.tag())
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordReport(Source source, ReportProgress progress, long bytes) {
+        long ingested = progress.getRowsIngested();
+        long filtered = Math.max(0, progress.getRowsParsed() - ingested);
+        rows(source, "aggregated").increment(ingested);
+        rows(source, "filtered").increment(filtered);
+        DistributionSummary.builder(CELLS)
+                .description("Cells written into the workbook of each report")
+                .tag("source", source.tag())
+                .register(meterRegistry)
+                .record(progress.getCellsWritten());
+        DistributionSummary.builder(BYTES)
+                .description("Size of each report written")
+                .baseUnit(BaseUnits.BYTES)
+                .tag("source", source.tag())
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    private Counter rows(Source source, String result) {
+        return Counter.builder(ROWS)
+                .description("Worklogs read by the reports")
+                .tags("source", source.tag(), "result", result)
+                .register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of a report being generated, updated concurrently by the readers of the worklog.
+ */
+public class ReportProgress {
+
+    private final LongAdder   rowsParsed        = new LongAdder();
+    private final LongAdder   rowsIngested      = new LongAdder();
+    private final LongAdder   pagesFetched      = new LongAdder();
+    private final LongAdder   requests          = new LongAdder();
+    private final LongAdder   requestNanos      = new LongAdder();
+    private final LongAdder   cellsWritten      = new LongAdder();
+    private final LongAdder   issuesMissing     = new LongAdder();
+    private final Set<String> unresolvedAuthors = ConcurrentHashMap.newKeySet();
+
+    public void rowParsed() {
+        rowsParsed.increment();
+    }
+
+    public void rowIngested() {
+        rowsIngested.increment();
+    }
+
+    public void pageFetched() {
+        pagesFetched.increment();
+    }
+
+    public void requestCompleted(long nanos) {
+        requests.increment();
+        requestNanos.add(nanos);
+    }
+
+    public void cellsWritten(long cells) {
+        cellsWritten.add(cells);
+    }
+
+    public void issuesMissing(long issues) {
+        issuesMissing.add(issues);
+    }
+
+    public void authorUnresolved(String author) {
+        unresolvedAuthors.add(author);
+    }
+
+    /**
+     * The number of worklogs read so far, including those of other authors or dates, which are filtered out.
+     */
+    public long getRowsParsed() {
+        return rowsParsed.sum();
+    }
+
+    /**
+     * The number of worklogs aggregated into the report so far.
+     */
+    public long getRowsIngested() {
+        return rowsIngested.sum();
+    }
+
+    /**
+     * The number of responses read from Jira so far.
+     */
+    public long getPagesFetched() {
+        return pagesFetched.sum();
+    }
+
+    /**
+     * The number of requests sent to Jira so far, including the failed ones.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * The sum of the latencies of the requests sent to Jira so far, which exceeds the time spent reading when requests are concurrent.
+     */
+    public Duration getRequestTime() {
+        return Duration.ofNanos(requestNanos.sum());
+    }
+
+    /**
+     * The number of cells written into the workbook of the report.
+     */
+    public long getCellsWritten() {
+        return cellsWritten.sum();
+    }
+
+    /**
+     * The number of issues with worklogs not found on Jira, e.g. deleted, whose worklog is left out of the report.
+     */
+    public long getIssuesMissing() {
+        return issuesMissing.sum();
+    }
+
+    /**
+     * The authors of the report matching no Jira user, whose worklog is left out of the report.
+     */
+    public Set<String> getUnresolvedAuthors() {
+        return Set.copyOf(unresolvedAuthors);
+    }
+
+}
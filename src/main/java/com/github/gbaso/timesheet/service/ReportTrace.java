@@ -0,0 +1,90 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.gbaso.timesheet.service.ReportMetrics.Source;
+import com.github.gbaso.timesheet.service.ReportMetrics.Stage;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The stages of a single report, timed one after the other and recorded in the {@link ReportMetrics}. Once the report is written, the time spent in each stage
+ * is logged along with the counters of its progress.
+ */
+@Slf4j
+public class ReportTrace {
+
+    private final ReportMetrics  metrics;
+    private final Source         source;
+    @Getter
+    private final ReportProgress progress;
+    private final long           start;
+    private final long[]         stageNanos = new long[Stage.values().length];
+    private long                 mark;
+
+    ReportTrace(ReportMetrics metrics, Source source, ReportProgress progress) {
+        this.metrics = metrics;
+        this.source = source;
+        this.progress = progress;
+        this.start = System.nanoTime();
+        this.mark = start;
+    }
+
+    /**
+     * Times the next stage from now, e.g. when the report is written some time after its worklog was read.
+     */
+    public void mark() {
+        mark = System.nanoTime();
+    }
+
+    /**
+     * Records the time elapsed since the end of the previous stage, or since the last {@link #mark()}, as spent in the given stage.
+     */
+    public void stageCompleted(Stage stage) {
+        long now = System.nanoTime();
+        long nanos = now - mark;
+        stageNanos[stage.ordinal()] += nanos;
+        metrics.recordStage(source, stage, nanos);
+        mark = now;
+    }
+
+    /**
+     * Completes the write stage, and records the counters of the report.
+     */
+    public void reportWritten(long bytes) {
+        stageCompleted(Stage.WRITE);
+        metrics.recordReport(source, progress, bytes);
+        log.info("Report from {} in {} ms: read {} ms, convert {} ms, write {} ms; {} rows parsed, {} aggregated; {} Jira requests in {} ms; {} cells, {} bytes",
+                source.tag(), millis(System.nanoTime() - start), millis(stageNanos[Stage.READ.ordinal()]), millis(stageNanos[Stage.CONVERT.ordinal()]),
+                millis(stageNanos[Stage.WRITE.ordinal()]), progress.getRowsParsed(), progress.getRowsIngested(), progress.getRequests(),
+                progress.getRequestTime().toMillis(), progress.getCellsWritten(), bytes);
+        if (progress.getIssuesMissing() > 0) {
+            log.warn("Report from {} left out the worklog of {} issues not found on Jira", source.tag(), progress.getIssuesMissing());
+        }
+        if (!progress.getUnresolvedAuthors().isEmpty()) {
+            log.warn("Report from {} left out the authors matching no Jira user: {}", source.tag(), progress.getUnresolvedAuthors());
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-process cache of the Jira sites accessible to each authorized client. Concurrent lookups for the same client share a single request, and failed lookups
+ * are not cached. Hits, misses and evictions are published as the {@code cache.*} metrics tagged with {@code cache=jira.sites}.
+ */
+@Component
+public class SiteCache {
+
+    static final String                              NAME         = "jira.sites";
+
+    private static final long                        MAXIMUM_SIZE = 10_000;
+
+    private final AsyncCache<String, List<JiraSite>> cache;
+
+    public SiteCache(TimesheetProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getJira().getSiteCacheTimeToLive())
+                .maximumSize(MAXIMUM_SIZE)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), NAME);
+    }
+
+    /**
+     * Returns the sites of the client with the given key, subscribing to the loader if they are neither cached nor being loaded. Cancelling the returned
+     * {@link Mono} does not cancel a load shared with other subscribers.
+     */
+    public Mono<List<JiraSite>> get(String clientKey, Mono<List<JiraSite>> loader) {
+        return Mono.fromFuture(() -> cache.get(clientKey, (key, executor) -> loader.toFuture()).copy());
+    }
+
+    public void invalidate(String clientKey) {
+        cache.synchronous().invalidate(clientKey);
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * The timesheets of a team over the same dates, one per author in the given order, so that the worklog of the whole team can be aggregated in a single pass.
+ */
+@Getter
+public class TeamTimesheet {
+
+    private final LocalDate       from;
+    private final LocalDate       to;
+    private final List<String>    authors;
+    @Getter(AccessLevel.NONE)
+    private final List<Timesheet> timesheets;
+    private final ReportProgress  progress;
+
+    public TeamTimesheet(LocalDate from, LocalDate to, Collection<String> authors) {
+        this(from, to, authors, new ReportProgress());
+    }
+
+    /**
+     * A team timesheet counting the worklogs added to it in the given progress.
+     */
+    public TeamTimesheet(LocalDate from, LocalDate to, Collection<String> authors, ReportProgress progress) {
+        Assert.notEmpty(authors, "No authors");
+        this.from = from;
+        this.to = to;
+        this.progress = progress;
+        this.authors = List.copyOf(authors);
+        this.timesheets = new ArrayList<>(this.authors.size());
+        for (int i = 0; i < this.authors.size(); i++) {
+            timesheets.add(new Timesheet(from, to));
+        }
+    }
+
+    private TeamTimesheet(String author, Timesheet timesheet) {
+        this.from = timesheet.getFrom();
+        this.to = timesheet.getTo();
+        this.authors = List.of(author);
+        this.timesheets = List.of(timesheet);
+        this.progress = new ReportProgress();
+    }
+
+    /**
+     * A team of a single author, aggregating into the given timesheet.
+     */
+    public static TeamTimesheet of(String author, Timesheet timesheet) {
+        return new TeamTimesheet(author, timesheet);
+    }
+
+    public Timesheet getTimesheet(int index) {
+        return timesheets.get(index);
+    }
+
+    public Timesheet getTimesheet(String author) {
+        int index = authors.indexOf(author);
+        return index < 0 ? null : timesheets.get(index);
+    }
+
+    public void add(int author, String key, String summary, LocalDate date, int minutes) {
+        timesheets.get(author).add(key, summary, date, minutes);
+        progress.rowIngested();
+    }
+
+    public void add(String author, String key, String summary, LocalDate date, int minutes) {
+        int index = authors.indexOf(author);
+        Assert.isTrue(index >= 0, () -> "Unexpected author " + author);
+        add(index, key, summary, date, minutes);
+    }
+
+    /**
+     * An empty team timesheet for the same authors and dates, sharing the progress, e.g. to aggregate a part of the worklog before merging it.
+     */
+    public TeamTimesheet emptyCopy() {
+        return new TeamTimesheet(from, to, authors, progress);
+    }
+
+    public void merge(TeamTimesheet other) {
+        Assert.isTrue(authors.equals(other.authors), "Cannot merge timesheets of different teams");
+        for (int i = 0; i < timesheets.size(); i++) {
+            timesheets.get(i).merge(other.timesheets.get(i));
+        }
+    }
+
+    /**
+     * A timesheet with a row per author, keyed by the author, holding their total minutes per day.
+     */
+    public Timesheet getSummary() {
+        var summary = new Timesheet(from, to);
+        for (int i = 0; i < authors.size(); i++) {
+            Timesheet timesheet = timesheets.get(i);
+            for (int day = 0; day < timesheet.getDays(); day++) {
+                summary.add(authors.get(i), "", from.plusDays(day), timesheet.getTotal(day));
+            }
+        }
+        return summary;
+    }
+
+}
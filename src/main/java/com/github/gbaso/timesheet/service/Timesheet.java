@@ -0,0 +1,122 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Minutes worked per issue and per day, aggregated one worklog at a time so that the worklogs themselves never need to be kept. Each issue has a dense row of
+ * minutes indexed by the day offset from {@code from}, and the totals by issue and by day are kept up to date as minutes are added.
+ */
+@Getter
+public class Timesheet {
+
+    private final LocalDate             from;
+    private final LocalDate             to;
+    private final int                   days;
+    @Getter(AccessLevel.NONE)
+    private final long                  fromEpochDay;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, IssueRow> issueRows = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final int[]                 totalByDay;
+    private int                         total;
+
+    public Timesheet(LocalDate from, LocalDate to) {
+        Assert.isTrue(!from.isAfter(to), () -> "Invalid date interval: from " + from + " to " + to);
+        this.from = from;
+        this.to = to;
+        this.fromEpochDay = from.toEpochDay();
+        this.days = (int) (to.toEpochDay() - fromEpochDay + 1);
+        this.totalByDay = new int[days];
+    }
+
+    public void add(String key, String summary, LocalDate date, int minutes) {
+        long day = date.toEpochDay() - fromEpochDay;
+        if (day < 0 || day >= days) {
+            throw new IllegalArgumentException("Date " + date + " is outside of the timesheet from " + from + " to " + to);
+        }
+        IssueRow row = issueRows.computeIfAbsent(key, k -> new IssueRow(k, summary, days));
+        row.add((int) day, minutes);
+        totalByDay[(int) day] += minutes;
+        total += minutes;
+    }
+
+    /**
+     * Adds the minutes of another timesheet over the same dates, e.g. aggregated from a different part of the same source.
+     */
+    public void merge(Timesheet other) {
+        Assert.isTrue(from.equals(other.from) && days == other.days, "Cannot merge timesheets over different dates");
+        other.issueRows.forEach((key, otherRow) -> {
+            IssueRow row = issueRows.computeIfAbsent(key, k -> new IssueRow(k, otherRow.summary, days));
+            for (int day = 0; day < days; day++) {
+                row.add(day, otherRow.minutes[day]);
+            }
+        });
+        for (int day = 0; day < days; day++) {
+            totalByDay[day] += other.totalByDay[day];
+        }
+        total += other.total;
+    }
+
+    public int getTotal(int day) {
+        return totalByDay[day];
+    }
+
+    /**
+     * The issue rows, sorted by key.
+     */
+    public List<IssueRow> getIssueRows() {
+        return issueRows.values().stream().sorted(Comparator.comparing(IssueRow::getKey)).toList();
+    }
+
+    @Getter
+    public static class IssueRow {
+
+        private final String key;
+        private final String summary;
+        @Getter(AccessLevel.NONE)
+        private final int[]  minutes;
+        private int          total;
+
+        IssueRow(String key, String summary, int days) {
+            this.key = key;
+            this.summary = summary;
+            this.minutes = new int[days];
+        }
+
+        void add(int day, int value) {
+            minutes[day] += value;
+            total += value;
+        }
+
+        public int getMinutes(int day) {
+            return minutes[day];
+        }
+
+    }
+
+}
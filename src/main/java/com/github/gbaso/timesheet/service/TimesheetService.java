@@ -16,24 +16,37 @@
 
 package com.github.gbaso.timesheet.service;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.web.multipart.MultipartFile;
 
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.config.TimesheetProperties.Workbook.Engine;
+import com.github.gbaso.timesheet.csv.CsvUpload;
+import com.github.gbaso.timesheet.csv.CsvUpload.RowLimit;
 import com.github.gbaso.timesheet.csv.WorklogRow;
+import com.github.gbaso.timesheet.service.ApiReaderService.SyncedWorklog;
+import com.github.gbaso.timesheet.service.ReportMetrics.Source;
+import com.github.gbaso.timesheet.service.ReportMetrics.Stage;
 import com.github.gbaso.timesheet.utils.TimeUtils;
 
 import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
 
 /**
  * @author Giacomo Baso
@@ -42,39 +55,251 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class TimesheetService {
 
-    private final CsvReaderService csvReaderService;
-    private final ApiReaderService apiReaderService;
-    private final WorkbookService  workbookService;
+    private final CsvReaderService    csvReaderService;
+    private final ApiReaderService    apiReaderService;
+    private final WorkbookService     workbookService;
+    private final ReportMetrics       reportMetrics;
+    private final TimesheetProperties properties;
 
-    public File generateReportFromInputSteam(InputStream inputStream, String author, LocalDate from, LocalDate to) throws IOException {
-        List<WorklogRow> rows = csvReaderService.readWorklog(inputStream, author, from, to);
-        return generateReport(rows, author, from, to);
+    /**
+     * Uploads above {@code timesheet.csv.parallel-threshold} are moved to a temporary file, so that they can be parsed in parallel chunks.
+     */
+    public ReportWriter generateReportFromFile(MultipartFile file, String author, LocalDate from, LocalDate to) throws IOException {
+        var team = TeamTimesheet.of(author, new Timesheet(from, to));
+        var trace = reportMetrics.trace(Source.FILE, team.getProgress());
+        readFile(file, team);
+        return generateReport(team, trace);
     }
 
-    public File generateReportFromAPI(Set<String> projects, String author, LocalDate from, LocalDate to) throws IOException {
-        List<WorklogRow> rows = apiReaderService.readWorklog(projects, author, from, to);
-        return generateReport(rows, author, from, to);
+    public ReportWriter generateTeamReportFromFile(MultipartFile file, Set<String> authors, LocalDate from, LocalDate to) throws IOException {
+        var team = new TeamTimesheet(from, to, authors);
+        var trace = reportMetrics.trace(Source.FILE, team.getProgress());
+        readFile(file, team);
+        return generateTeamReport(team, trace);
     }
 
-    private File generateReport(List<WorklogRow> rows, String author, LocalDate from, LocalDate to) throws IOException {
-        Map<String, String> summaryMap = rows.stream().map(r -> new Issue(r.getKey(), r.getSummary(), r.getType())).distinct().collect(Collectors.toMap(Issue::key, Issue::summary));
-        Map<String, Map<LocalDate, Integer>> reportMap = rows.stream()
-                .collect(Collectors.groupingBy(WorklogRow::getKey, Collectors.groupingBy(WorklogRow::getStarted, Collectors.reducing(0, this::toMinutes, Integer::sum))));
-        return saveToFile(reportMap, summaryMap, author, from, to);
+    /**
+     * Reads an export from {@code timesheet.csv.import-directory}, memory-mapping it instead of streaming it.
+     */
+    public ReportWriter generateReportFromServerFile(String fileName, String author, LocalDate from, LocalDate to) throws IOException {
+        var team = TeamTimesheet.of(author, new Timesheet(from, to));
+        var trace = reportMetrics.trace(Source.SERVER_FILE, team.getProgress());
+        csvReaderService.readWorklog(resolveServerFile(fileName), team);
+        return generateReport(team, trace);
     }
 
-    private int toMinutes(WorklogRow row) {
-        String timeSpent = row.getTimeSpent();
-        return TimeUtils.parseMinutes(timeSpent);
+    public ReportWriter generateTeamReportFromServerFile(String fileName, Set<String> authors, LocalDate from, LocalDate to) throws IOException {
+        var team = new TeamTimesheet(from, to, authors);
+        var trace = reportMetrics.trace(Source.SERVER_FILE, team.getProgress());
+        csvReaderService.readWorklog(resolveServerFile(fileName), team);
+        return generateTeamReport(team, trace);
     }
 
-    private File saveToFile(Map<String, Map<LocalDate, Integer>> reportMap, Map<String, String> summaryMap, String author, LocalDate from, LocalDate to) throws IOException {
-        Workbook workbook = workbookService.convertReport(reportMap, summaryMap, author, from, to);
-        File tmpFile = Files.createTempFile(null, "xls").toFile();
-        try (var os = new FileOutputStream(tmpFile)) {
-            workbook.write(os);
+    /**
+     * Reads a CSV file from the body of a request as it arrives, without buffering it, inflating it if gzip-compressed. The file is read within
+     * {@code timesheet.csv.max-upload-size} and {@code timesheet.csv.max-upload-rows}, otherwise a {@link CsvUpload.LimitExceededException} is thrown. Team
+     * reports are rendered as such even for a single author.
+     */
+    public ReportWriter generateReportFromUpload(InputStream body, Set<String> authors, LocalDate from, LocalDate to, boolean teamReport) throws IOException {
+        var team = new TeamTimesheet(from, to, authors);
+        var trace = reportMetrics.trace(Source.FILE, team.getProgress());
+        var csv = properties.getCsv();
+        csvReaderService.readWorklog(CsvUpload.open(body, csv.getMaxUploadSize().toBytes()), team, new RowLimit(csv.getMaxUploadRows()));
+        return teamReport ? generateTeamReport(team, trace) : generateReport(team, trace);
+    }
+
+    public ReportWriter generateReportFromInputSteam(InputStream inputStream, String author, LocalDate from, LocalDate to) throws IOException {
+        var team = TeamTimesheet.of(author, new Timesheet(from, to));
+        var trace = reportMetrics.trace(Source.FILE, team.getProgress());
+        csvReaderService.readWorklog(inputStream, team);
+        return generateReport(team, trace);
+    }
+
+    /**
+     * Reads the worklog from the Jira site of the given authorized client, or of the client of the current request if {@code null}. The worklog is read from
+     * the given sync of the store if any, otherwise the store is synced first when enabled.
+     */
+    public ReportWriter generateReportFromAPI(Set<String> projects, String author, LocalDate from, LocalDate to, SyncedWorklog synced,
+            OAuth2AuthorizedClient authorizedClient) {
+        var team = TeamTimesheet.of(author, new Timesheet(from, to));
+        var trace = reportMetrics.trace(Source.API, team.getProgress());
+        readAPI(projects, team, synced, clientContext(authorizedClient));
+        return generateReport(team, trace);
+    }
+
+    public ReportWriter generateTeamReportFromAPI(Set<String> projects, Set<String> authors, LocalDate from, LocalDate to, SyncedWorklog synced,
+            OAuth2AuthorizedClient authorizedClient) {
+        var team = new TeamTimesheet(from, to, authors);
+        var trace = reportMetrics.trace(Source.API, team.getProgress());
+        readAPI(projects, team, synced, clientContext(authorizedClient));
+        return generateTeamReport(team, trace);
+    }
+
+    /**
+     * Reads the worklog of one or more authors from Jira without blocking, aggregating each worklog as soon as it is read, and completes with the report once the
+     * whole worklog is read. Only the rendering of the report blocks, when it is written. Team reports are rendered as such even for a single author.
+     */
+    public Mono<ReportWriter> fetchReportFromAPI(Set<String> projects, Set<String> authors, LocalDate from, LocalDate to, boolean teamReport,
+            OAuth2AuthorizedClient authorizedClient) {
+        return Mono.fromSupplier(() -> new TeamTimesheet(from, to, authors))
+                .flatMap(team -> {
+                    var trace = reportMetrics.trace(Source.API, team.getProgress());
+                    return apiReaderService.fetchWorklog(projects, authors, from, to)
+                            .reduce(team, this::addRow)
+                            .map(aggregated -> teamReport ? generateTeamReport(aggregated, trace) : generateReport(aggregated, trace))
+                            .contextWrite(context -> context.put(ReportProgress.class, team.getProgress()));
+                })
+                .contextWrite(clientContext(authorizedClient));
+    }
+
+    /**
+     * Reads a CSV file into the report of one or more authors, counting the worklogs read in the given progress. Used by report jobs, off the request thread.
+     */
+    public ReportWriter generateReportFromFile(Path file, Set<String> authors, LocalDate from, LocalDate to, ReportProgress progress) throws IOException {
+        var team = new TeamTimesheet(from, to, authors, progress);
+        var trace = reportMetrics.trace(Source.FILE, progress);
+        csvReaderService.readWorklog(file, team);
+        return generateReport(team, trace);
+    }
+
+    /**
+     * Reads the worklog of one or more authors from Jira with the given authorized client, counting the worklogs and the pages read in the given progress. Used
+     * by report jobs, off the request thread.
+     */
+    public ReportWriter generateReportFromAPI(Set<String> projects, Set<String> authors, LocalDate from, LocalDate to, ReportProgress progress,
+            OAuth2AuthorizedClient authorizedClient) {
+        var team = new TeamTimesheet(from, to, authors, progress);
+        var trace = reportMetrics.trace(Source.API, progress);
+        readAPI(projects, team, null, clientContext(authorizedClient));
+        return generateReport(team, trace);
+    }
+
+    public String hashFile(MultipartFile file) throws IOException {
+        return ReportCache.hash(file.getInputStream());
+    }
+
+    public String hashServerFile(String fileName) throws IOException {
+        return ReportCache.hash(Files.newInputStream(resolveServerFile(fileName)));
+    }
+
+    /**
+     * Syncs the worklog read from Jira for reports from the given date, or returns {@code null} unless the worklog is read from the store.
+     *
+     * @see ApiReaderService#syncWorklog(LocalDate)
+     */
+    public SyncedWorklog syncWorklog(LocalDate from, OAuth2AuthorizedClient authorizedClient) {
+        return apiReaderService.syncWorklog(from).contextWrite(clientContext(authorizedClient)).block();
+    }
+
+    private void readFile(MultipartFile file, TeamTimesheet team) throws IOException {
+        if (file.getSize() < properties.getCsv().getParallelThreshold().toBytes()) {
+            csvReaderService.readWorklog(file.getInputStream(), team);
+            return;
+        }
+        Path upload = Files.createTempFile("upload", ".csv");
+        try {
+            file.transferTo(upload.toFile());
+            reportMetrics.recordTempFile(Source.FILE, Files.size(upload));
+            csvReaderService.readWorklog(upload, team);
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    /**
+     * Resolves a file of the import directory, following symbolic links before checking that the file is in the directory, so that links cannot escape it.
+     */
+    private Path resolveServerFile(String fileName) throws IOException {
+        Path directory = properties.getCsv().getImportDirectory();
+        Assert.notNull(directory, "Reports from server side files are disabled");
+        Path importDirectory = directory.toRealPath();
+        Path file;
+        try {
+            file = importDirectory.resolve(fileName).toRealPath();
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException("Invalid file: " + fileName, e);
+        }
+        Assert.isTrue(file.startsWith(importDirectory) && Files.isRegularFile(file), "Invalid file: " + fileName);
+        return file;
+    }
+
+    private void readAPI(Set<String> projects, TeamTimesheet team, SyncedWorklog synced, ContextView context) {
+        Set<String> authors = Set.copyOf(team.getAuthors());
+        apiReaderService.fetchWorklog(projects, authors, team.getFrom(), team.getTo(), synced)
+                .doOnNext(row -> addRow(team, row))
+                .contextWrite(Context.of(context).put(ReportProgress.class, team.getProgress()))
+                .blockLast();
+    }
+
+    /**
+     * Jira requests are authorized with the client in the context, which also identifies the cached sites of the client.
+     */
+    private static Context clientContext(OAuth2AuthorizedClient authorizedClient) {
+        return authorizedClient != null ? Context.of(OAuth2AuthorizedClient.class, authorizedClient) : Context.empty();
+    }
+
+    private TeamTimesheet addRow(TeamTimesheet team, WorklogRow row) {
+        var worklog = properties.getWorklog();
+        int minutes = TimeUtils.parseMinutes(row.getTimeSpent(), worklog.getHoursPerDay(), worklog.getDaysPerWeek());
+        team.add(row.getAuthor(), row.getKey(), row.getSummary(), row.getStarted(), minutes);
+        return team;
+    }
+
+    /**
+     * A single author report for one author, a team report otherwise.
+     */
+    private ReportWriter generateReport(TeamTimesheet team, ReportTrace trace) {
+        if (team.getAuthors().size() == 1) {
+            return generateReport(team.getTimesheet(0), team.getAuthors().get(0), trace);
         }
-        return tmpFile;
+        return generateTeamReport(team, trace);
+    }
+
+    private ReportWriter generateReport(Timesheet timesheet, String author, ReportTrace trace) {
+        trace.stageCompleted(Stage.READ);
+        if (isNativeWorkbook()) {
+            return outputStream -> writeNativeReport(out -> workbookService.writeReport(timesheet, author, trace.getProgress(), out), trace, outputStream);
+        }
+        return outputStream -> writeReport(() -> workbookService.convertReport(timesheet, author, trace.getProgress()), trace, outputStream);
+    }
+
+    private ReportWriter generateTeamReport(TeamTimesheet team, ReportTrace trace) {
+        trace.stageCompleted(Stage.READ);
+        if (isNativeWorkbook()) {
+            return outputStream -> writeNativeReport(out -> workbookService.writeTeamReport(team, out), trace, outputStream);
+        }
+        return outputStream -> writeReport(() -> workbookService.convertTeamReport(team), trace, outputStream);
+    }
+
+    private boolean isNativeWorkbook() {
+        return properties.getWorkbook().getEngine() == Engine.NATIVE;
+    }
+
+    /**
+     * Converts the report into a workbook and writes it, timing both stages from the time the report is rendered rather than read.
+     */
+    private void writeReport(Supplier<Workbook> converter, ReportTrace trace, OutputStream outputStream) throws IOException {
+        trace.mark();
+        Workbook workbook = converter.get();
+        trace.stageCompleted(Stage.CONVERT);
+        var countingStream = new CountingOutputStream(outputStream);
+        try {
+            workbook.write(countingStream);
+        } finally {
+            workbookService.close(workbook);
+        }
+        trace.reportWritten(countingStream.getByteCount());
+    }
+
+    /**
+     * Writes the report without a workbook, the rows being converted as they are written, so that the convert stage is empty.
+     */
+    private void writeNativeReport(ReportWriter writer, ReportTrace trace, OutputStream outputStream) throws IOException {
+        trace.mark();
+        trace.stageCompleted(Stage.CONVERT);
+        var countingStream = new CountingOutputStream(outputStream);
+        writer.writeTo(countingStream);
+        trace.reportWritten(countingStream.getByteCount());
     }
 
 }
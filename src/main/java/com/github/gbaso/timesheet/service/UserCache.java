@@ -0,0 +1,64 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * In-process cache of the account ids of the Jira users with a given display name on each site, bounded in size and time so that renamed users are searched
+ * again. Hits, misses and evictions are published as the {@code cache.*} metrics tagged with {@code cache=jira.users}.
+ */
+@Component
+public class UserCache {
+
+    static final String                       NAME = "jira.users";
+
+    private final Cache<UserKey, Set<String>> cache;
+
+    record UserKey(String cloudId, String displayName) {}
+
+    public UserCache(TimesheetProperties properties, MeterRegistry meterRegistry) {
+        var jira = properties.getJira();
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(jira.getUserCacheTimeToLive())
+                .maximumSize(jira.getUserCacheMaximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * The account ids of the users with the given display name, or {@code null} if not cached.
+     */
+    public Set<String> get(String cloudId, String displayName) {
+        return cache.getIfPresent(new UserKey(cloudId, displayName));
+    }
+
+    public void put(String cloudId, String displayName, Set<String> accountIds) {
+        cache.put(new UserKey(cloudId, displayName), accountIds);
+    }
+
+}
@@ -1,12 +1,15 @@
 package com.github.gbaso.timesheet.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CellType;
@@ -14,9 +17,13 @@ import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
 
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.Timesheet.IssueRow;
 import com.github.gbaso.timesheet.utils.TimeUtils;
 
 import lombok.RequiredArgsConstructor;
@@ -25,64 +32,188 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class WorkbookService {
 
-    private static final DateTimeFormatter dayOfWeekFormatter = DateTimeFormatter.ofPattern("EE");
-    private static final DateTimeFormatter dateFormatter      = DateTimeFormatter.ofPattern("dd/MM/yy");
+    /**
+     * Version of the layout of the reports, part of the key of the cached reports: to be increased whenever a change renders different reports from the same
+     * worklog.
+     */
+    public static final int                LAYOUT_VERSION        = 1;
 
-    public Workbook convertReport(Map<String, Map<LocalDate, Integer>> reportMap, Map<String, String> summaryMap, String author, LocalDate from, LocalDate to) {
-        Map<LocalDate, Integer> totalByDate = reportMap.values()
-                .stream()
-                .flatMap(map -> map.entrySet().stream())
-                .collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.reducing(0, Map.Entry::getValue, Integer::sum)));
-        Map<String, Integer> totalByKey = reportMap.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().values().stream().reduce(0, Integer::sum)));
-        List<LocalDate> dates = Stream.iterate(from, date -> !date.isAfter(to), date -> date.plusDays(1)).toList();
-        List<String> keys = totalByKey.keySet().stream().sorted().toList();
+    private static final DateTimeFormatter dayOfWeekFormatter    = DateTimeFormatter.ofPattern("EE");
+    private static final DateTimeFormatter dateFormatter         = DateTimeFormatter.ofPattern("dd/MM/yy");
+    private static final int               MAX_SHEET_NAME_LENGTH = 31;
+    private static final String            DEFAULT_SHEET_NAME    = "Sheet0";
 
-        var workbook = new XSSFWorkbook();
+    private final TimesheetProperties      properties;
+
+    public Workbook convertReport(Timesheet timesheet, String author) {
+        return convertReport(timesheet, author, new ReportProgress());
+    }
+
+    /**
+     * Converts the timesheet of an author into a workbook, counting the cells written in the given progress.
+     */
+    public Workbook convertReport(Timesheet timesheet, String author, ReportProgress progress) {
+        List<LocalDate> dates = getDates(timesheet.getFrom(), timesheet.getTo());
+        List<IssueRow> issueRows = timesheet.getIssueRows();
+
+        Workbook workbook = createWorkbook((long) issueRows.size() * dates.size());
+        CellStyle bold = createBoldStyle(workbook);
+        progress.cellsWritten(addSheet(workbook.createSheet(), "User:", author, "Issue", timesheet, issueRows, dates, bold));
+        return workbook;
+    }
+
+    /**
+     * Converts the timesheets of a team into a workbook with a summary sheet, holding the total minutes of each author per day, followed by a sheet per author.
+     * The cells written are counted in the progress of the team.
+     */
+    public Workbook convertTeamReport(TeamTimesheet team) {
+        List<LocalDate> dates = getDates(team.getFrom(), team.getTo());
+        Timesheet summary = team.getSummary();
+        List<IssueRow> summaryRows = summary.getIssueRows();
+        List<List<IssueRow>> authorRows = new ArrayList<>(team.getAuthors().size());
+        long rows = summaryRows.size();
+        for (int i = 0; i < team.getAuthors().size(); i++) {
+            List<IssueRow> issueRows = team.getTimesheet(i).getIssueRows();
+            authorRows.add(issueRows);
+            rows += issueRows.size();
+        }
+
+        Workbook workbook = createWorkbook(rows * dates.size());
+        CellStyle bold = createBoldStyle(workbook);
+        long cells = addSheet(workbook.createSheet("Team"), "Team:", team.getAuthors().size() + " users", "User", summary, summaryRows, dates, bold);
+        for (int i = 0; i < team.getAuthors().size(); i++) {
+            String author = team.getAuthors().get(i);
+            Sheet sheet = workbook.createSheet(getSheetName(author, name -> workbook.getSheetIndex(name) >= 0));
+            cells += addSheet(sheet, "User:", author, "Issue", team.getTimesheet(i), authorRows.get(i), dates, bold);
+        }
+        team.getProgress().cellsWritten(cells);
+        return workbook;
+    }
+
+    /**
+     * Writes the report of an author as SpreadsheetML straight into the stream, with the same layout as {@link #convertReport}, but without building a workbook.
+     * The cells written are counted in the given progress.
+     */
+    public void writeReport(Timesheet timesheet, String author, ReportProgress progress, OutputStream outputStream) throws IOException {
+        List<LocalDate> dates = getDates(timesheet.getFrom(), timesheet.getTo());
+        try (var writer = new XlsxWriter(outputStream, List.of(DEFAULT_SHEET_NAME))) {
+            writeSheet(writer, "User:", author, "Issue", timesheet, timesheet.getIssueRows(), dates);
+            progress.cellsWritten(writer.getCells());
+        }
+    }
+
+    /**
+     * Writes the report of a team as SpreadsheetML straight into the stream, with the same layout as {@link #convertTeamReport}, but without building a
+     * workbook.
+     */
+    public void writeTeamReport(TeamTimesheet team, OutputStream outputStream) throws IOException {
+        List<LocalDate> dates = getDates(team.getFrom(), team.getTo());
+        List<String> sheetNames = new ArrayList<>(team.getAuthors().size() + 1);
+        sheetNames.add("Team");
+        for (String author : team.getAuthors()) {
+            sheetNames.add(getSheetName(author, name -> sheetNames.stream().anyMatch(name::equalsIgnoreCase)));
+        }
+        try (var writer = new XlsxWriter(outputStream, sheetNames)) {
+            Timesheet summary = team.getSummary();
+            writeSheet(writer, "Team:", team.getAuthors().size() + " users", "User", summary, summary.getIssueRows(), dates);
+            for (int i = 0; i < team.getAuthors().size(); i++) {
+                Timesheet timesheet = team.getTimesheet(i);
+                writeSheet(writer, "User:", team.getAuthors().get(i), "Issue", timesheet, timesheet.getIssueRows(), dates);
+            }
+            team.getProgress().cellsWritten(writer.getCells());
+        }
+    }
+
+    /**
+     * Releases the resources held by a workbook returned by {@link #convertReport}, including the temporary files of a streamed workbook.
+     */
+    public void close(Workbook workbook) throws IOException {
+        if (workbook instanceof SXSSFWorkbook streamingWorkbook) {
+            streamingWorkbook.dispose();
+        }
+        workbook.close();
+    }
+
+    private Workbook createWorkbook(long cells) {
+        var config = properties.getWorkbook();
+        if (cells > config.getStreamingThreshold()) {
+            var workbook = new SXSSFWorkbook(config.getRowAccessWindowSize());
+            workbook.setCompressTempFiles(config.isCompressTempFiles());
+            return workbook;
+        }
+        return new XSSFWorkbook();
+    }
+
+    private static List<LocalDate> getDates(LocalDate from, LocalDate to) {
+        return Stream.iterate(from, date -> !date.isAfter(to), date -> date.plusDays(1)).toList();
+    }
+
+    private static CellStyle createBoldStyle(Workbook workbook) {
         CellStyle bold = workbook.createCellStyle();
         Font font = workbook.createFont();
         font.setBold(true);
         bold.setFont(font);
-        Sheet sheet = workbook.createSheet();
+        return bold;
+    }
 
+    /**
+     * A valid sheet name for the author, distinct from the names of the existing sheets.
+     */
+    private static String getSheetName(String author, Predicate<String> exists) {
+        String name = WorkbookUtil.createSafeSheetName(author);
+        for (int i = 2; exists.test(name); i++) {
+            String suffix = " (" + i + ")";
+            name = StringUtils.left(WorkbookUtil.createSafeSheetName(author), MAX_SHEET_NAME_LENGTH - suffix.length()) + suffix;
+        }
+        return name;
+    }
+
+    /**
+     * @return the number of cells written
+     */
+    private long addSheet(Sheet sheet, String title, String subject, String keyHeader, Timesheet timesheet, List<IssueRow> issueRows, List<LocalDate> dates,
+            CellStyle bold) {
         int rowNum = 0;
-        addAuthorRow(sheet, rowNum++, author, bold);
-        addTotalsRow(sheet, rowNum++, dates, totalByDate, bold);
-        addDayOfWeekRow(sheet, rowNum++, dates, bold);
-        addHeadersRow(sheet, rowNum++, dates, bold);
-        for (String key : keys) {
-            addKeyRow(sheet, rowNum++, key, summaryMap.get(key), dates, reportMap.get(key), totalByKey.get(key));
-        }
-        addTotalsRow(sheet, rowNum, dates, totalByDate, bold);
-        return workbook;
+        long cells = 0;
+        cells += addAuthorRow(sheet, rowNum++, title, subject, bold);
+        cells += addTotalsRow(sheet, rowNum++, timesheet, bold);
+        cells += addDayOfWeekRow(sheet, rowNum++, dates, bold);
+        cells += addHeadersRow(sheet, rowNum++, keyHeader, dates, bold);
+        for (IssueRow issueRow : issueRows) {
+            cells += addKeyRow(sheet, rowNum++, issueRow, timesheet.getDays());
+        }
+        cells += addTotalsRow(sheet, rowNum, timesheet, bold);
+        return cells;
     }
 
-    private void addAuthorRow(Sheet sheet, int rowNum, String author, CellStyle bold) {
+    private int addAuthorRow(Sheet sheet, int rowNum, String title, String subject, CellStyle bold) {
         Row row = sheet.createRow(rowNum);
         Cell titleCell = row.createCell(0, CellType.STRING);
         titleCell.setCellStyle(bold);
-        titleCell.setCellValue("User:");
+        titleCell.setCellValue(title);
         Cell cell = row.createCell(1, CellType.STRING);
         cell.setCellStyle(bold);
-        cell.setCellValue(author);
+        cell.setCellValue(subject);
+        return row.getPhysicalNumberOfCells();
     }
 
-    private void addTotalsRow(Sheet sheet, int rowNum, List<LocalDate> dates, Map<LocalDate, Integer> totalByDate, CellStyle bold) {
+    private int addTotalsRow(Sheet sheet, int rowNum, Timesheet timesheet, CellStyle bold) {
         int colNum = 0;
         Row row = sheet.createRow(rowNum);
         Cell titleCell = row.createCell(colNum++, CellType.STRING);
         titleCell.setCellStyle(bold);
         titleCell.setCellValue("Total");
         colNum++;
-        for (LocalDate date : dates) {
-            int minutes = totalByDate.getOrDefault(date, 0);
+        for (int day = 0; day < timesheet.getDays(); day++) {
             Cell cell = row.createCell(colNum++, CellType.STRING);
-            cell.setCellValue(TimeUtils.formatMinutes(minutes));
+            cell.setCellValue(TimeUtils.formatMinutes(timesheet.getTotal(day)));
         }
         Cell totalCell = row.createCell(colNum, CellType.STRING);
-        totalCell.setCellValue(TimeUtils.formatMinutes(totalByDate.values().stream().reduce(0, Integer::sum)));
+        totalCell.setCellValue(TimeUtils.formatMinutes(timesheet.getTotal()));
+        return row.getPhysicalNumberOfCells();
     }
 
-    private void addDayOfWeekRow(Sheet sheet, int rowNum, List<LocalDate> dates, CellStyle bold) {
+    private int addDayOfWeekRow(Sheet sheet, int rowNum, List<LocalDate> dates, CellStyle bold) {
         int colNum = 2;
         Row row = sheet.createRow(rowNum);
         for (LocalDate date : dates) {
@@ -90,14 +221,15 @@ public class WorkbookService {
             cell.setCellStyle(bold);
             cell.setCellValue(dayOfWeekFormatter.format(date));
         }
+        return row.getPhysicalNumberOfCells();
     }
 
-    private void addHeadersRow(Sheet sheet, int rowNum, List<LocalDate> dates, CellStyle bold) {
+    private int addHeadersRow(Sheet sheet, int rowNum, String keyHeader, List<LocalDate> dates, CellStyle bold) {
         int colNum = 0;
         Row row = sheet.createRow(rowNum);
         Cell keyCell = row.createCell(colNum++, CellType.STRING);
         keyCell.setCellStyle(bold);
-        keyCell.setCellValue("Issue");
+        keyCell.setCellValue(keyHeader);
         Cell summaryCell = row.createCell(colNum++, CellType.STRING);
         summaryCell.setCellStyle(bold);
         summaryCell.setCellValue("Summary");
@@ -109,22 +241,64 @@ public class WorkbookService {
         Cell totalCell = row.createCell(colNum, CellType.STRING);
         totalCell.setCellStyle(bold);
         totalCell.setCellValue("Total");
+        return row.getPhysicalNumberOfCells();
     }
 
-    private void addKeyRow(Sheet sheet, int rowNum, String key, String summary, List<LocalDate> dates, Map<LocalDate, Integer> reportByKey, Integer total) {
+    private int addKeyRow(Sheet sheet, int rowNum, IssueRow issueRow, int days) {
         int colNum = 0;
         Row row = sheet.createRow(rowNum);
         Cell keyCell = row.createCell(colNum++, CellType.STRING);
-        keyCell.setCellValue(key);
+        keyCell.setCellValue(issueRow.getKey());
         Cell summaryCell = row.createCell(colNum++, CellType.STRING);
-        summaryCell.setCellValue(summary);
-        for (LocalDate date : dates) {
-            int minutes = reportByKey.getOrDefault(date, 0);
+        summaryCell.setCellValue(issueRow.getSummary());
+        for (int day = 0; day < days; day++) {
             Cell cell = row.createCell(colNum++, CellType.STRING);
-            cell.setCellValue(TimeUtils.formatMinutes(minutes));
+            cell.setCellValue(TimeUtils.formatMinutes(issueRow.getMinutes(day)));
         }
         Cell totalCell = row.createCell(colNum, CellType.STRING);
-        totalCell.setCellValue(TimeUtils.formatMinutes(total));
+        totalCell.setCellValue(TimeUtils.formatMinutes(issueRow.getTotal()));
+        return row.getPhysicalNumberOfCells();
+    }
+
+    private void writeSheet(XlsxWriter writer, String title, String subject, String keyHeader, Timesheet timesheet, List<IssueRow> issueRows,
+            List<LocalDate> dates) throws IOException {
+        writer.startSheet();
+        writer.startRow();
+        writer.cell(title, true);
+        writer.cell(subject, true);
+        writeTotalsRow(writer, timesheet);
+        writer.startRow();
+        writer.skipCells(2);
+        for (LocalDate date : dates) {
+            writer.cell(dayOfWeekFormatter.format(date), true);
+        }
+        writer.startRow();
+        writer.cell(keyHeader, true);
+        writer.cell("Summary", true);
+        for (LocalDate date : dates) {
+            writer.cell(dateFormatter.format(date), true);
+        }
+        writer.cell("Total", true);
+        for (IssueRow issueRow : issueRows) {
+            writer.startRow();
+            writer.cell(issueRow.getKey(), false);
+            writer.cell(issueRow.getSummary(), false);
+            for (int day = 0; day < timesheet.getDays(); day++) {
+                writer.cell(TimeUtils.formatMinutes(issueRow.getMinutes(day)), false);
+            }
+            writer.cell(TimeUtils.formatMinutes(issueRow.getTotal()), false);
+        }
+        writeTotalsRow(writer, timesheet);
+    }
+
+    private void writeTotalsRow(XlsxWriter writer, Timesheet timesheet) throws IOException {
+        writer.startRow();
+        writer.cell("Total", true);
+        writer.skipCells(1);
+        for (int day = 0; day < timesheet.getDays(); day++) {
+            writer.cell(TimeUtils.formatMinutes(timesheet.getTotal(day)), false);
+        }
+        writer.cell(TimeUtils.formatMinutes(timesheet.getTotal()), false);
     }
 
 }
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+/**
+ * File-based store of the worklogs and issues read from each Jira site by each principal, kept as one JSON file per account in a directory per cloud id in
+ * {@code timesheet.jira.store-directory}. Since Jira only returns what the principal is allowed to see, a snapshot is never shared between principals. A
+ * snapshot holds every worklog updated between {@code since} and {@code until}, so that the next sync only needs the changes after {@code until}. At most
+ * {@code timesheet.jira.store-cache-maximum-size} snapshots are kept in memory, the others are read again from their file when needed.
+ */
+@Component
+public class WorklogStore {
+
+    private final TimesheetProperties          properties;
+    private final ObjectMapper                 objectMapper;
+
+    private final Cache<JiraAccount, Snapshot> snapshots;
+    private final Cache<JiraAccount, Object>   locks;
+
+    public WorklogStore(TimesheetProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.snapshots = Caffeine.newBuilder().maximumSize(properties.getJira().getStoreCacheMaximumSize()).build();
+        this.locks = Caffeine.newBuilder().weakValues().build();
+    }
+
+    public record StoredWorklog(String issueId, LocalDate started, String timeSpent, String author) {}
+
+    /**
+     * Immutable content of the store for an account: snapshots are replaced as a whole when a delta is applied, so they can be read without locking. The version
+     * is the end of the last sync which changed the content, so that equal versions of an account hold the same worklogs. Deleted worklogs are synced with their
+     * own cursor, {@code deletedUntil}, since worklog/deleted pages end at different times than worklog/updated ones. The issues were all read at
+     * {@code issuesReadAt}, and only added to since.
+     */
+    public record Snapshot(long since, long until, long deletedUntil, long version, long issuesReadAt, Map<Integer, StoredWorklog> worklogs,
+            Map<String, Issue> issues) {
+
+        static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, Map.of(), Map.of());
+
+        /**
+         * Whether the snapshot holds all the worklogs updated from the given time on, and can thus be synced incrementally.
+         */
+        public boolean covers(long from) {
+            return until > 0 && since <= from;
+        }
+
+        /**
+         * The time from which the deleted worklogs are synced, the end of the updated ones for stores written before the deleted ones had their own cursor.
+         */
+        public long deletedSince() {
+            return deletedUntil > 0 ? deletedUntil : until;
+        }
+
+    }
+
+    /**
+     * The worklogs updated from {@code since} to {@code until}, and deleted until {@code deletedUntil}, along with the issues they were logged on. An
+     * incremental delta is applied on top of the stored worklogs, otherwise it replaces them. If {@code issuesRead} is set, the issues of all the worklogs
+     * were read again and replace the stored ones, otherwise they are added to them.
+     */
+    public record Delta(boolean incremental, long since, long until, long deletedUntil, Map<Integer, StoredWorklog> updated, Set<Integer> deleted,
+            Map<String, Issue> issues, boolean issuesRead) {
+
+        /**
+         * Whether the delta was read from an older state than the given snapshot, e.g. by a concurrent sync of the same account applied first. Applying it
+         * would overwrite newer worklogs with older ones, so it is dropped: the snapshot already holds at least the same changes.
+         */
+        boolean isStale(Snapshot snapshot) {
+            return incremental ? since < snapshot.until() : snapshot.covers(since) && until <= snapshot.until();
+        }
+
+    }
+
+    public boolean isEnabled() {
+        return properties.getJira().getStoreDirectory() != null;
+    }
+
+    public Snapshot get(JiraAccount account) {
+        return snapshots.get(account, this::read);
+    }
+
+    /**
+     * Applies the delta to the snapshot of the account, unless it is stale, and returns the resulting snapshot. Deltas of the same account are applied one at a
+     * time, those of different accounts concurrently. The file is only rewritten if the delta changes the worklogs or the issues: otherwise only the cursors
+     * advance, which at worst are read again after a restart or once the snapshot is evicted from memory.
+     */
+    public Snapshot apply(JiraAccount account, Delta delta) {
+        synchronized (locks.get(account, key -> new Object())) {
+            Snapshot current = get(account);
+            if (delta.isStale(current)) {
+                return current;
+            }
+            Map<Integer, StoredWorklog> worklogs = new HashMap<>(delta.incremental() ? current.worklogs() : Map.of());
+            worklogs.keySet().removeAll(delta.deleted());
+            worklogs.putAll(delta.updated());
+            Map<String, Issue> issues = new HashMap<>(delta.issuesRead() ? Map.of() : current.issues());
+            issues.putAll(delta.issues());
+            long issuesReadAt = delta.issuesRead() ? System.currentTimeMillis() : current.issuesReadAt();
+            boolean changed = !delta.incremental() || !delta.updated().isEmpty() || !delta.deleted().isEmpty();
+            long until = delta.incremental() ? Math.max(current.until(), delta.until()) : delta.until();
+            long deletedUntil = delta.incremental() ? Math.max(current.deletedUntil(), delta.deletedUntil()) : delta.deletedUntil();
+            long version = changed ? Math.max(until, current.version() + 1) : current.version();
+            Snapshot snapshot = delta.incremental()
+                    ? new Snapshot(current.since(), until, deletedUntil, version, issuesReadAt, worklogs, issues)
+                    : new Snapshot(delta.since(), until, deletedUntil, version, issuesReadAt, worklogs, issues);
+            if (changed || !delta.issues().isEmpty() || delta.issuesRead()) {
+                write(account, snapshot);
+            }
+            snapshots.put(account, snapshot);
+            return snapshot;
+        }
+    }
+
+    private Snapshot read(JiraAccount account) {
+        Path file = resolve(account);
+        if (!Files.exists(file)) {
+            return Snapshot.EMPTY;
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), Snapshot.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read worklog store " + file, e);
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so that a crash never leaves a truncated store behind.
+     */
+    private void write(JiraAccount account, Snapshot snapshot) {
+        Path file = resolve(account);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tempFile = Files.createTempFile(file.getParent(), "worklog", ".tmp");
+            try {
+                objectMapper.writeValue(tempFile.toFile(), snapshot);
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write worklog store " + file, e);
+        }
+    }
+
+    /**
+     * The file of an account is named after the hash of the principal, which may hold any character.
+     */
+    private Path resolve(JiraAccount account) {
+        Path directory = properties.getJira().getStoreDirectory().toAbsolutePath().normalize();
+        Path siteDirectory = directory.resolve(account.cloudId()).normalize();
+        Assert.isTrue(directory.equals(siteDirectory.getParent()), () -> "Invalid cloud id " + account.cloudId());
+        return siteDirectory.resolve(DigestUtils.md5DigestAsHex(account.principal().getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a workbook of string cells as SpreadsheetML straight into a zip stream, without the object model of POI. Each row is written as soon as its cells
+ * are, and all the strings are shared, so that the durations repeated in every row are stored once. Cells are either regular or bold, the only two styles of
+ * the workbook.
+ * <p>
+ * The names of the sheets are known upfront, so that the parts describing the workbook come first, followed by the sheets in order, then by the styles and the
+ * shared strings. The underlying stream is not closed.
+ */
+class XlsxWriter implements Closeable {
+
+    private static final String        XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String        MAIN_NS         = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String        RELATIONSHIP_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String        PACKAGE_NS      = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String        CONTENT_TYPE    = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+    private static final int           BUFFER_SIZE     = 64 * 1024;
+
+    private final ZipOutputStream      zip;
+    private final Writer               writer;
+    private final int                  sheetCount;
+    private final Map<String, Integer> sharedStrings   = new LinkedHashMap<>();
+    private int                        sheets;
+    private boolean                    sheetOpen;
+    private boolean                    rowOpen;
+    private int                        rowNum;
+    private int                        colNum;
+    private long                       stringCells;
+    private long                       cells;
+
+    XlsxWriter(OutputStream outputStream, List<String> sheetNames) throws IOException {
+        this.zip = new ZipOutputStream(outputStream);
+        this.writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.sheetCount = sheetNames.size();
+        writeContentTypes();
+        writePackageRelationships();
+        writeWorkbook(sheetNames);
+        writeWorkbookRelationships();
+    }
+
+    /**
+     * Starts the next sheet, completing the previous one.
+     */
+    void startSheet() throws IOException {
+        endSheet();
+        if (sheets == sheetCount) {
+            throw new IllegalStateException("All the " + sheetCount + " sheets are written");
+        }
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + ++sheets + ".xml"));
+        writer.write(XML_DECLARATION);
+        writer.write("<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>");
+        sheetOpen = true;
+        rowNum = 0;
+    }
+
+    /**
+     * Starts the next row of the sheet, completing the previous one.
+     */
+    void startRow() throws IOException {
+        endRow();
+        rowNum++;
+        colNum = 0;
+        writer.write("<row r=\"");
+        writer.write(Integer.toString(rowNum));
+        writer.write("\">");
+        rowOpen = true;
+    }
+
+    /**
+     * Leaves the next cells of the row empty.
+     */
+    void skipCells(int count) {
+        colNum += count;
+    }
+
+    /**
+     * Writes the next cell of the row, blank if the value is {@code null}.
+     */
+    void cell(String value, boolean bold) throws IOException {
+        writer.write("<c r=\"");
+        writeColumn(colNum++);
+        writer.write(Integer.toString(rowNum));
+        writer.write(bold ? "\" s=\"1\"" : "\"");
+        if (value != null) {
+            writer.write(" t=\"s\"><v>");
+            writer.write(Integer.toString(sharedStrings.computeIfAbsent(value, v -> sharedStrings.size())));
+            writer.write("</v></c>");
+            stringCells++;
+        } else {
+            writer.write("/>");
+        }
+        cells++;
+    }
+
+    /**
+     * The number of cells written so far.
+     */
+    long getCells() {
+        return cells;
+    }
+
+    /**
+     * Completes the last sheet, then writes the styles and the shared strings. Missing sheets are written empty, so that the workbook is always valid.
+     */
+    @Override
+    public void close() throws IOException {
+        endSheet();
+        while (sheets < sheetCount) {
+            startSheet();
+            endSheet();
+        }
+        writeStyles();
+        writeSharedStrings();
+        writer.flush();
+        zip.finish();
+    }
+
+    private void endRow() throws IOException {
+        if (rowOpen) {
+            writer.write("</row>");
+            rowOpen = false;
+        }
+    }
+
+    private void endSheet() throws IOException {
+        if (sheetOpen) {
+            endRow();
+            writer.write("</sheetData></worksheet>");
+            closeEntry();
+            sheetOpen = false;
+        }
+    }
+
+    /**
+     * Writes the letters of a zero based column index, e.g. {@code A}, {@code Z}, {@code AA}.
+     */
+    private void writeColumn(int col) throws IOException {
+        if (col >= 26) {
+            writeColumn(col / 26 - 1);
+        }
+        writer.write('A' + col % 26);
+    }
+
+    private void writeContentTypes() throws IOException {
+        zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+        writer.write(XML_DECLARATION);
+        writer.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+        writer.write("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+        writer.write("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+        writer.write("<Override PartName=\"/xl/workbook.xml\" ContentType=\"" + CONTENT_TYPE + "sheet.main+xml\"/>");
+        for (int i = 1; i <= sheetCount; i++) {
+            writer.write("<Override PartName=\"/xl/worksheets/sheet" + i + ".xml\" ContentType=\"" + CONTENT_TYPE + "worksheet+xml\"/>");
+        }
+        writer.write("<Override PartName=\"/xl/styles.xml\" ContentType=\"" + CONTENT_TYPE + "styles+xml\"/>");
+        writer.write("<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"" + CONTENT_TYPE + "sharedStrings+xml\"/>");
+        writer.write("</Types>");
+        closeEntry();
+    }
+
+    private void writePackageRelationships() throws IOException {
+        zip.putNextEntry(new ZipEntry("_rels/.rels"));
+        writer.write(XML_DECLARATION);
+        writer.write("<Relationships xmlns=\"" + PACKAGE_NS + "\">");
+        writer.write("<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIP_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>");
+        writer.write("</Relationships>");
+        closeEntry();
+    }
+
+    private void writeWorkbook(List<String> sheetNames) throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/workbook.xml"));
+        writer.write(XML_DECLARATION);
+        writer.write("<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + RELATIONSHIP_NS + "\"><sheets>");
+        for (int i = 1; i <= sheetCount; i++) {
+            writer.write("<sheet name=\"");
+            writeEscaped(sheetNames.get(i - 1));
+            writer.write("\" sheetId=\"" + i + "\" r:id=\"rId" + i + "\"/>");
+        }
+        writer.write("</sheets></workbook>");
+        closeEntry();
+    }
+
+    private void writeWorkbookRelationships() throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/_rels/workbook.xml.rels"));
+        writer.write(XML_DECLARATION);
+        writer.write("<Relationships xmlns=\"" + PACKAGE_NS + "\">");
+        for (int i = 1; i <= sheetCount; i++) {
+            writer.write("<Relationship Id=\"rId" + i + "\" Type=\"" + RELATIONSHIP_NS + "/worksheet\" Target=\"worksheets/sheet" + i + ".xml\"/>");
+        }
+        writer.write("<Relationship Id=\"rId" + (sheetCount + 1) + "\" Type=\"" + RELATIONSHIP_NS + "/styles\" Target=\"styles.xml\"/>");
+        writer.write("<Relationship Id=\"rId" + (sheetCount + 2) + "\" Type=\"" + RELATIONSHIP_NS + "/sharedStrings\" Target=\"sharedStrings.xml\"/>");
+        writer.write("</Relationships>");
+        closeEntry();
+    }
+
+    /**
+     * The default font of POI, regular and bold, referenced by the cell styles {@code 0} and {@code 1}.
+     */
+    private void writeStyles() throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/styles.xml"));
+        writer.write(XML_DECLARATION);
+        writer.write("<styleSheet xmlns=\"" + MAIN_NS + "\">");
+        writer.write("<fonts count=\"2\">");
+        writer.write("<font><sz val=\"11\"/><color theme=\"1\"/><name val=\"Calibri\"/><family val=\"2\"/><scheme val=\"minor\"/></font>");
+        writer.write("<font><b/><sz val=\"11\"/><color theme=\"1\"/><name val=\"Calibri\"/><family val=\"2\"/><scheme val=\"minor\"/></font>");
+        writer.write("</fonts>");
+        writer.write("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>");
+        writer.write("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>");
+        writer.write("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>");
+        writer.write("<cellXfs count=\"2\">");
+        writer.write("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+        writer.write("<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/>");
+        writer.write("</cellXfs>");
+        writer.write("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>");
+        writer.write("</styleSheet>");
+        closeEntry();
+    }
+
+    private void writeSharedStrings() throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+        writer.write(XML_DECLARATION);
+        writer.write("<sst xmlns=\"" + MAIN_NS + "\" count=\"" + stringCells + "\" uniqueCount=\"" + sharedStrings.size() + "\">");
+        for (String value : sharedStrings.keySet()) {
+            writer.write("<si><t xml:space=\"preserve\">");
+            writeEscaped(value);
+            writer.write("</t></si>");
+        }
+        writer.write("</sst>");
+        closeEntry();
+    }
+
+    /**
+     * Escapes the markup characters, and the control characters which XML does not allow even escaped, as {@code _xHHHH_} like Excel does.
+     */
+    private void writeEscaped(String value) throws IOException {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> writer.write("&lt;");
+                case '>' -> writer.write("&gt;");
+                case '&' -> writer.write("&amp;");
+                case '"' -> writer.write("&quot;");
+                case '\t', '\n', '\r' -> writer.write(c);
+                default -> {
+                    if (c < 0x20 || c == 0xFFFE || c == 0xFFFF) {
+                        writer.write(String.format("_x%04X_", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+    }
+
+    private void closeEntry() throws IOException {
+        writer.flush();
+        zip.closeEntry();
+    }
+
+}
@@ -3,17 +3,18 @@ package com.github.gbaso.timesheet.utils;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneOffset;
-import java.util.stream.Stream;
-
-import org.springframework.util.Assert;
 
 import lombok.experimental.UtilityClass;
 
 @UtilityClass
 public class TimeUtils {
 
-    private static final int HOURS_PER_WORK_DAY = 8;
-    private static final int MINUTES_PER_HOUR   = 60;
+    public static final int       HOURS_PER_WORK_DAY = 8;
+    public static final int       DAYS_PER_WORK_WEEK = 5;
+
+    private static final int      MINUTES_PER_HOUR   = 60;
+    private static final int      CACHED_MINUTES     = 24 * MINUTES_PER_HOUR;
+    private static final String[] formattedMinutes   = new String[CACHED_MINUTES + 1];
 
     public long toEpochMillis(LocalDate when) {
         return when.toEpochSecond(LocalTime.MIDNIGHT, ZoneOffset.UTC) * 1000;
@@ -23,30 +24,77 @@ public class TimeUtils {
         return !when.isBefore(start) && !when.isAfter(end);
     }
 
-    public int parseMinutes(String timeSpent) {
-        return Stream.of(timeSpent.split(" ", 3)).mapToInt(fragment -> {
-            int length = fragment.length();
-            Assert.isTrue(length >= 2, () -> "Worklog " + timeSpent + " has invalid format: cannot parse " + fragment);
-            int prefix = Integer.parseInt(fragment.substring(0, length - 1));
-            String suffix = fragment.substring(length - 1);
-            return prefix * switch (suffix) {
-                case "d" -> HOURS_PER_WORK_DAY * MINUTES_PER_HOUR;
-                case "h" -> MINUTES_PER_HOUR;
-                case "m" -> 1;
-                default -> throw new IllegalArgumentException("Unexpected value: " + suffix);
-            };
-        }).sum();
+    public int parseMinutes(CharSequence timeSpent) {
+        return parseMinutes(timeSpent, HOURS_PER_WORK_DAY, DAYS_PER_WORK_WEEK);
+    }
+
+    /**
+     * Parses a duration such as {@code 1w 1d 2h 30m} into minutes, reading one character at a time without creating intermediate strings.
+     */
+    public int parseMinutes(CharSequence timeSpent, int hoursPerDay, int daysPerWeek) {
+        int minutesPerDay = hoursPerDay * MINUTES_PER_HOUR;
+        int minutes = 0;
+        int value = 0;
+        int digits = 0;
+        int fragments = 0;
+        for (int i = 0, length = timeSpent.length(); i < length; i++) {
+            char c = timeSpent.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c == ' ' && digits == 0) {
+                continue;
+            } else {
+                if (digits == 0) {
+                    throw invalidFormat(timeSpent, i);
+                }
+                minutes += value * switch (c) {
+                    case 'w' -> daysPerWeek * minutesPerDay;
+                    case 'd' -> minutesPerDay;
+                    case 'h' -> MINUTES_PER_HOUR;
+                    case 'm' -> 1;
+                    default -> throw new IllegalArgumentException("Unexpected value: " + c);
+                };
+                value = 0;
+                digits = 0;
+                fragments++;
+            }
+        }
+        if (digits > 0 || fragments == 0) {
+            throw invalidFormat(timeSpent, timeSpent.length());
+        }
+        return minutes;
+    }
+
+    private IllegalArgumentException invalidFormat(CharSequence timeSpent, int index) {
+        return new IllegalArgumentException("Worklog " + timeSpent + " has invalid format at index " + index);
     }
 
+    /**
+     * Formats minutes as hours and minutes, e.g. {@code 1h30m}. Durations up to a day are formatted once and then reused.
+     */
     public String formatMinutes(int minutes) {
-        var sb = new StringBuilder();
+        if (minutes < 0 || minutes > CACHED_MINUTES) {
+            return format(minutes);
+        }
+        String formatted = formattedMinutes[minutes];
+        if (formatted == null) {
+            // strings are immutable, so a race only formats the same value twice
+            formatted = format(minutes);
+            formattedMinutes[minutes] = formatted;
+        }
+        return formatted;
+    }
+
+    private String format(int minutes) {
+        var sb = new StringBuilder(8);
         int hours = minutes / MINUTES_PER_HOUR;
         if (hours > 0) {
-            sb.append(hours + "h");
+            sb.append(hours).append('h');
         }
         int rem = minutes % MINUTES_PER_HOUR;
         if (rem > 0) {
-            sb.append(rem + "m");
+            sb.append(rem).append('m');
         }
         return sb.toString();
     }
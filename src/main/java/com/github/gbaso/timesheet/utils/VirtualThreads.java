@@ -0,0 +1,68 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Virtual threads of Java 21 and later, looked up reflectively since the project is compiled for Java 17.
+ */
+@UtilityClass
+public class VirtualThreads {
+
+    public boolean isSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * An executor starting a new virtual thread for each task.
+     *
+     * @throws IllegalStateException if virtual threads are not supported
+     */
+    public ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw unsupported(e);
+        }
+    }
+
+    /**
+     * A factory of virtual threads named with the given prefix and a counter.
+     *
+     * @throws IllegalStateException if virtual threads are not supported
+     */
+    public ThreadFactory factory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw unsupported(e);
+        }
+    }
+
+    private IllegalStateException unsupported(ReflectiveOperationException e) {
+        return new IllegalStateException("Virtual threads require Java 21 or later, running on Java " + Runtime.version().feature(), e);
+    }
+
+}
@@ -18,20 +18,32 @@ package com.github.gbaso.timesheet.web;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.Enumeration;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.github.gbaso.timesheet.service.ReportWriter;
 
 /**
  * @author Giacomo Baso
  */
 public abstract class BaseController {
 
+    protected static final String REPORT_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
     protected LocalDate parseDate(String date) {
         return StringUtils.isNotBlank(date) ? LocalDate.parse(date) : LocalDate.now();
     }
@@ -42,12 +54,76 @@ public abstract class BaseController {
     }
 
     protected void downloadFile(InputStream inputStream, String fileName, String contentType, HttpServletResponse response) throws IOException {
-        response.setContentType(contentType);
-        var disposition = ContentDisposition.attachment().filename(fileName).build();
-        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.toString());
+        setAttachmentHeaders(fileName, contentType, response);
         try (var outStream = response.getOutputStream()) {
             IOUtils.copy(inputStream, outStream);
         }
     }
 
+    /**
+     * Renders the report straight into the response, which is sent chunked since its length is unknown. If {@code spoolToFile} is set, the report is written to a
+     * temporary file first and sent with its content length; the file is always deleted afterwards.
+     */
+    protected void downloadReport(ReportWriter report, String fileName, String contentType, boolean spoolToFile, HttpServletResponse response) throws IOException {
+        if (spoolToFile) {
+            Path spoolFile = Files.createTempFile("report", ".tmp");
+            try {
+                try (var outStream = Files.newOutputStream(spoolFile)) {
+                    report.writeTo(outStream);
+                }
+                try (var inputStream = Files.newInputStream(spoolFile)) {
+                    downloadFile(inputStream, fileName, contentType, Files.size(spoolFile), response);
+                }
+            } finally {
+                Files.deleteIfExists(spoolFile);
+            }
+        } else {
+            setAttachmentHeaders(fileName, contentType, response);
+            try (var outStream = response.getOutputStream()) {
+                report.writeTo(outStream);
+            }
+        }
+    }
+
+    /**
+     * Sets the entity tag of the response, answering 304 Not Modified if the request already matches it. Only safe requests, {@code GET} and {@code HEAD}, are
+     * answered 304: a matching tag on other requests, such as the {@code POST} of a form, is ignored.
+     *
+     * @return whether the response is complete
+     */
+    protected boolean checkNotModified(String etag, HttpServletRequest request, HttpServletResponse response) {
+        String quotedEtag = "\"" + etag + "\"";
+        response.setHeader(HttpHeaders.ETAG, quotedEtag);
+        if (!HttpMethod.GET.matches(request.getMethod()) && !HttpMethod.HEAD.matches(request.getMethod())) {
+            return false;
+        }
+        Enumeration<String> ifNoneMatch = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        while (ifNoneMatch.hasMoreElements()) {
+            for (String tag : StringUtils.split(ifNoneMatch.nextElement(), ',')) {
+                tag = StringUtils.removeStart(tag.trim(), "W/");
+                if (tag.equals(quotedEtag) || tag.equals("*")) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A response rendering the report into the body once the response is committed, e.g. for a report produced asynchronously.
+     */
+    protected ResponseEntity<StreamingResponseBody> reportEntity(ReportWriter report, String fileName, String contentType) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(contentType))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(report::writeTo);
+    }
+
+    private void setAttachmentHeaders(String fileName, String contentType, HttpServletResponse response) {
+        response.setContentType(contentType);
+        var disposition = ContentDisposition.attachment().filename(fileName).build();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.toString());
+    }
+
 }
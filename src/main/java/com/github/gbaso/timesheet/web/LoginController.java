@@ -10,6 +10,8 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
+import com.github.gbaso.timesheet.service.ApiReaderService;
+
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -23,6 +25,7 @@ public class LoginController {
     private final OAuth2ClientProperties        properties;
     private final ClientRegistrationRepository  clientRegistrationRepository;
     private final OAuth2AuthorizedClientService authorizedClientService;
+    private final ApiReaderService              apiReaderService;
 
     @GetMapping
     public String getLoginPage(Model model) {
@@ -37,6 +40,9 @@ public class LoginController {
     public String getLoginInfo(OAuth2AuthenticationToken token) {
         OAuth2AuthorizedClient client = authorizedClientService.loadAuthorizedClient(token.getAuthorizedClientRegistrationId(), token.getName());
         log.debug("Login with principal: {}", client.getPrincipalName());
+        apiReaderService.getSites(client).subscribe(
+                sites -> log.debug("Accessible Jira sites: {}", sites),
+                e -> log.warn("Cannot read the accessible Jira sites", e));
         return "login-success";
     }
 
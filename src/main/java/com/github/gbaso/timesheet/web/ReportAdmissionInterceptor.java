@@ -0,0 +1,144 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.web;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.ReactiveAdapterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import com.github.gbaso.timesheet.service.ReportAdmission;
+import com.github.gbaso.timesheet.service.ReportAdmission.Permit;
+import com.github.gbaso.timesheet.service.ReportAdmission.RejectedException;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Admits the report requests through the {@link ReportAdmission}, estimating their cost from the report dates and the request size, and answers 429 Too Many
+ * Requests with a Retry-After header when they are rejected. The cost of a report is held until its response is complete, including the asynchronous ones.
+ * Asynchronous handlers are admitted without waiting in the queue, so that no servlet thread is blocked for them: they are rejected at once when the global
+ * budget is exhausted. Report jobs are admitted the same way, and hold their cost until the job completes: the handler takes the permit over with
+ * {@link #takePermit(HttpServletRequest)}.
+ *
+ * @author Giacomo Baso
+ */
+@Component
+@RequiredArgsConstructor
+public class ReportAdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String   PERMIT_ATTRIBUTE = ReportAdmissionInterceptor.class.getName() + ".permit";
+
+    private final ReportAdmission admission;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException, InterruptedException {
+        // asynchronous requests are dispatched again once the result is ready, and were already admitted
+        if (!admission.isEnabled() || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+        LocalDate from = parseDate(request.getParameter("from"));
+        LocalDate to = parseDate(request.getParameter("to"));
+        int cost = admission.cost(from, to, Math.max(0, request.getContentLengthLong()));
+        String user = getUser(request);
+        try {
+            Permit permit = isAsync(handler) ? admission.tryAdmit(user, cost) : admission.admit(user, cost);
+            request.setAttribute(PERMIT_ATTRIBUTE, permit);
+            return true;
+        } catch (RejectedException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Takes over the permit of the request, e.g. to release it once the report job it was submitted for completes rather than with the response.
+     *
+     * @return the permit, to be released by the caller, or {@code null} if the request was not admitted through the interceptor
+     */
+    public static Permit takePermit(HttpServletRequest request) {
+        Permit permit = (Permit) request.getAttribute(PERMIT_ATTRIBUTE);
+        request.removeAttribute(PERMIT_ATTRIBUTE);
+        return permit;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof Permit permit) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            permit.release();
+        }
+    }
+
+    /**
+     * The report date, or today if missing or invalid, in which case the request is rejected by the controller anyway.
+     */
+    private static LocalDate parseDate(String date) {
+        try {
+            return StringUtils.isNotBlank(date) ? LocalDate.parse(date) : LocalDate.now();
+        } catch (DateTimeParseException e) {
+            return LocalDate.now();
+        }
+    }
+
+    /**
+     * Whether the handler returns an asynchronous result, built off the servlet thread, or submits a report job.
+     */
+    private static boolean isAsync(Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return false;
+        }
+        if (ReportJobController.class.isAssignableFrom(handlerMethod.getBeanType())) {
+            return true;
+        }
+        Class<?> type = handlerMethod.getReturnType().getParameterType();
+        return ReactiveAdapterRegistry.getSharedInstance().getAdapter(type) != null || CompletionStage.class.isAssignableFrom(type)
+                || Callable.class.isAssignableFrom(type) || DeferredResult.class.isAssignableFrom(type) || WebAsyncTask.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Logged in users are told apart by their principal, the Jira account id, anonymous users by their session if any, or else by their address. With
+     * {@code server.forward-headers-strategy} the address is read from the X-Forwarded-For header, which a client can spoof to dodge the budget of its user
+     * unless the proxy in front of the application overwrites it.
+     */
+    private static String getUser(HttpServletRequest request) {
+        if (request.getUserPrincipal() != null) {
+            return "user:" + request.getUserPrincipal().getName();
+        }
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            return "session:" + session.getId();
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
+}
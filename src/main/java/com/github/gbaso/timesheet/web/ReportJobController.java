@@ -0,0 +1,174 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.web;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.github.gbaso.timesheet.service.ReportAdmission.Permit;
+import com.github.gbaso.timesheet.service.ReportJob;
+import com.github.gbaso.timesheet.service.ReportJobService;
+import com.github.gbaso.timesheet.service.ReportJobService.ReportTask;
+import com.github.gbaso.timesheet.service.TimesheetService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reports generated in the background: submitting a report returns its job at once, whose status is polled until the report can be downloaded. Jobs are only
+ * visible to the principal who submitted them.
+ *
+ * @author Giacomo Baso
+ */
+@RestController
+@RequestMapping("/jobs")
+@RequiredArgsConstructor
+public class ReportJobController extends BaseController {
+
+    private final ReportJobService              jobService;
+    private final TimesheetService              timesheetService;
+    private final OAuth2AuthorizedClientManager authorizedClientManager;
+
+    @PostMapping(path = "/report-file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JobStatus> reportFromFile(@RequestParam MultipartFile file, @RequestParam Set<String> authors, @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, Principal principal, HttpServletRequest request) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        Path upload = Files.createTempFile("upload", ".csv");
+        try {
+            file.transferTo(upload);
+            return submit(getFileName(authors), principal, request, progress -> {
+                try {
+                    return timesheetService.generateReportFromFile(upload, authors, fromDate, toDate, progress);
+                } finally {
+                    Files.deleteIfExists(upload);
+                }
+            });
+        } catch (IOException | ResponseStatusException e) {
+            Files.deleteIfExists(upload);
+            throw e;
+        }
+    }
+
+    /**
+     * The authorized client of the principal is resolved when the job runs rather than when it is submitted, so that the access token is refreshed if it
+     * expired while the job was queued.
+     */
+    @PostMapping(path = "/report-api", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JobStatus> reportFromAPI(@RequestParam Set<String> projects, @RequestParam Set<String> authors, @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, Principal principal, HttpServletRequest request) {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        String owner = principal.getName();
+        return submit(getFileName(authors), principal, request,
+                progress -> timesheetService.generateReportFromAPI(projects, authors, fromDate, toDate, progress, authorize(owner)));
+    }
+
+    @GetMapping(path = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public JobStatus getStatus(@PathVariable String id, Principal principal) {
+        return JobStatus.of(getJob(id, principal));
+    }
+
+    /**
+     * Downloads the report of a completed job, answering 409 Conflict while the job is still running or if it failed.
+     */
+    @GetMapping(path = "/{id}/result", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void getResult(@PathVariable String id, Principal principal, HttpServletResponse response) throws IOException {
+        ReportJob job = getJob(id, principal);
+        Path result = job.getResult();
+        if (result == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job " + id + " is " + job.getStatus());
+        }
+        try (var inputStream = Files.newInputStream(result)) {
+            downloadFile(inputStream, job.getFileName(), REPORT_CONTENT_TYPE, Files.size(result), response);
+        }
+    }
+
+    /**
+     * Submits the job, which holds the admission permit of the request until it completes.
+     */
+    private ResponseEntity<JobStatus> submit(String fileName, Principal principal, HttpServletRequest request, ReportTask task) {
+        Permit permit = ReportAdmissionInterceptor.takePermit(request);
+        Runnable release = permit != null ? permit::release : () -> {};
+        ReportJob job;
+        try {
+            job = jobService.submit(fileName, principal.getName(), task, release);
+        } catch (RejectedExecutionException e) {
+            release.run();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many report jobs", e);
+        }
+        var location = ServletUriComponentsBuilder.fromCurrentContextPath().path("/jobs/{id}").buildAndExpand(job.getId()).toUri();
+        return ResponseEntity.accepted().location(location).body(JobStatus.of(job));
+    }
+
+    private ReportJob getJob(String id, Principal principal) {
+        return jobService.getJob(id, principal.getName()).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown or expired job " + id));
+    }
+
+    /**
+     * Authorizes the client of the given principal off the request thread, refreshing its access token if expired.
+     */
+    private OAuth2AuthorizedClient authorize(String principal) {
+        var authorizeRequest = OAuth2AuthorizeRequest.withClientRegistrationId("jira").principal(principal).build();
+        OAuth2AuthorizedClient authorizedClient = authorizedClientManager.authorize(authorizeRequest);
+        Assert.state(authorizedClient != null, () -> "Jira is not authorized for " + principal);
+        return authorizedClient;
+    }
+
+    private static String getFileName(Set<String> authors) {
+        return authors.size() == 1 ? TimesheetController.REPORT_FILE_NAME : TimesheetController.TEAM_REPORT_FILE_NAME;
+    }
+
+    public record JobStatus(String id, ReportJob.Status status, long rowsIngested, long pagesFetched, long issuesMissing, Set<String> unresolvedAuthors,
+            Instant submittedAt, Instant completedAt, String error) {
+
+        static JobStatus of(ReportJob job) {
+            var progress = job.getProgress();
+            return new JobStatus(job.getId(), job.getStatus(), progress.getRowsIngested(), progress.getPagesFetched(), progress.getIssuesMissing(),
+                    progress.getUnresolvedAuthors(), job.getSubmittedAt(), job.getCompletedAt(), job.getError());
+        }
+
+    }
+
+}
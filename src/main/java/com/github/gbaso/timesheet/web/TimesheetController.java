@@ -16,25 +16,44 @@
 
 package com.github.gbaso.timesheet.web;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.annotation.RegisteredOAuth2AuthorizedClient;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.csv.CsvUpload.LimitExceededException;
+import com.github.gbaso.timesheet.service.ApiReaderService.SyncedWorklog;
+import com.github.gbaso.timesheet.service.ReportCache;
+import com.github.gbaso.timesheet.service.ReportCache.CachedReport;
+import com.github.gbaso.timesheet.service.ReportCache.ReportSupplier;
+import com.github.gbaso.timesheet.service.ReportWriter;
 import com.github.gbaso.timesheet.service.TimesheetService;
+import com.github.gbaso.timesheet.service.WorkbookService;
 
 import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
 
 /**
  * @author Giacomo Baso
@@ -44,33 +63,198 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class TimesheetController extends BaseController {
 
-    private final TimesheetService timesheetService;
+    static final String               REPORT_FILE_NAME      = "TimePO User timesheet report.xlsx";
+    static final String               TEAM_REPORT_FILE_NAME = "TimePO Team timesheet report.xlsx";
+
+    private final TimesheetService    timesheetService;
+    private final ReportCache         reportCache;
+    private final TimesheetProperties properties;
 
     @PostMapping(path = "/report-file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     public void reportFromFile(@RequestParam MultipartFile file, @RequestParam String author, @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        downloadReport(() -> keyParts(REPORT_FILE_NAME, timesheetService.hashFile(file), author, fromDate, toDate),
+                () -> timesheetService.generateReportFromFile(file, author, fromDate, toDate), REPORT_FILE_NAME, request, response);
+    }
+
+    /**
+     * Same as {@code /report-file}, but the CSV file, optionally gzip-compressed, is the body of the request and is parsed as it arrives instead of being
+     * buffered by the multipart resolver. The report parameters are sent in the query string.
+     */
+    @PostMapping(path = "/report-upload", consumes = { "text/csv", "application/gzip", MediaType.APPLICATION_OCTET_STREAM_VALUE },
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void reportFromUpload(@RequestParam String author, @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        downloadReport(readUpload(Set.of(author), fromDate, toDate, false, request), REPORT_FILE_NAME, REPORT_CONTENT_TYPE,
+                properties.getReport().isSpoolToFile(), response);
+    }
+
+    /**
+     * Also answers {@code GET} and {@code HEAD} with the parameters in the query string, so that clients can revalidate a cached report with its entity tag.
+     */
+    @RequestMapping(path = "/report-server-file", method = { RequestMethod.GET, RequestMethod.POST }, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void reportFromServerFile(@RequestParam String file, @RequestParam String author, @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        downloadReport(() -> keyParts(REPORT_FILE_NAME, timesheetService.hashServerFile(file), author, fromDate, toDate),
+                () -> timesheetService.generateReportFromServerFile(file, author, fromDate, toDate), REPORT_FILE_NAME, request, response);
+    }
+
+    /**
+     * Also answers {@code GET} and {@code HEAD} with the parameters in the query string, like {@code /report-server-file}; forms still post them as multipart.
+     */
+    @RequestMapping(path = "/report-api", method = { RequestMethod.GET, RequestMethod.POST }, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void reportFromAPI(@RequestParam Set<String> projects, @RequestParam String author, @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            @RegisteredOAuth2AuthorizedClient("jira") OAuth2AuthorizedClient authorizedClient, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        SyncedWorklog synced = reportCache.isEnabled() ? timesheetService.syncWorklog(fromDate, authorizedClient) : null;
+        downloadReport(() -> apiKeyParts(REPORT_FILE_NAME, projects, Set.of(author), fromDate, toDate, synced),
+                () -> timesheetService.generateReportFromAPI(projects, author, fromDate, toDate, synced, authorizedClient), REPORT_FILE_NAME, request, response);
+    }
+
+    @PostMapping(path = "/team-report-file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void teamReportFromFile(@RequestParam MultipartFile file, @RequestParam Set<String> authors, @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        downloadReport(() -> keyParts(TEAM_REPORT_FILE_NAME, timesheetService.hashFile(file), new TreeSet<>(authors), fromDate, toDate),
+                () -> timesheetService.generateTeamReportFromFile(file, authors, fromDate, toDate), TEAM_REPORT_FILE_NAME, request, response);
+    }
+
+    @PostMapping(path = "/team-report-upload", consumes = { "text/csv", "application/gzip", MediaType.APPLICATION_OCTET_STREAM_VALUE },
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void teamReportFromUpload(@RequestParam Set<String> authors, @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        downloadReport(readUpload(authors, fromDate, toDate, true, request), TEAM_REPORT_FILE_NAME, REPORT_CONTENT_TYPE, properties.getReport().isSpoolToFile(),
+                response);
+    }
+
+    /**
+     * Also answers {@code GET} and {@code HEAD}, like {@code /report-server-file}.
+     */
+    @RequestMapping(path = "/team-report-server-file", method = { RequestMethod.GET, RequestMethod.POST }, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void teamReportFromServerFile(@RequestParam String file, @RequestParam Set<String> authors, @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        downloadReport(() -> keyParts(TEAM_REPORT_FILE_NAME, timesheetService.hashServerFile(file), new TreeSet<>(authors), fromDate, toDate),
+                () -> timesheetService.generateTeamReportFromServerFile(file, authors, fromDate, toDate), TEAM_REPORT_FILE_NAME, request, response);
+    }
+
+    /**
+     * Also answers {@code GET} and {@code HEAD}, like {@code /report-api}.
+     */
+    @RequestMapping(path = "/team-report-api", method = { RequestMethod.GET, RequestMethod.POST }, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void teamReportFromAPI(@RequestParam Set<String> projects, @RequestParam Set<String> authors, @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, @RegisteredOAuth2AuthorizedClient("jira") OAuth2AuthorizedClient authorizedClient, HttpServletRequest request,
             HttpServletResponse response) throws IOException {
         LocalDate fromDate = parseDate(from);
         LocalDate toDate = parseDate(to);
         Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
-        File report = timesheetService.generateReportFromInputSteam(file.getInputStream(), author, fromDate, toDate);
-        if (report != null) {
-            try (var inputStream = new FileInputStream(report)) {
-                downloadFile(inputStream, "TimePO User timesheet report.xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", report.length(), response);
-            }
-        }
+        SyncedWorklog synced = reportCache.isEnabled() ? timesheetService.syncWorklog(fromDate, authorizedClient) : null;
+        downloadReport(() -> apiKeyParts(TEAM_REPORT_FILE_NAME, projects, authors, fromDate, toDate, synced),
+                () -> timesheetService.generateTeamReportFromAPI(projects, authors, fromDate, toDate, synced, authorizedClient), TEAM_REPORT_FILE_NAME, request,
+                response);
     }
 
-    @PostMapping(path = "/report-api", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public void reportFromAPI(@RequestParam Set<String> projects, @RequestParam String author, @RequestParam(required = false) String from, @RequestParam(required = false) String to, HttpServletResponse response) throws IOException {
+    /**
+     * Same as {@code /report-api}, but the worklog is read and aggregated without holding a servlet thread, which is released until the report is rendered.
+     */
+    @PostMapping(path = "/reactive/report-api", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Mono<ResponseEntity<StreamingResponseBody>> reactiveReportFromAPI(@RequestParam Set<String> projects, @RequestParam String author,
+            @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            @RegisteredOAuth2AuthorizedClient("jira") OAuth2AuthorizedClient authorizedClient) {
         LocalDate fromDate = parseDate(from);
         LocalDate toDate = parseDate(to);
         Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
-        File report = timesheetService.generateReportFromAPI(projects, author, fromDate, toDate);
-        if (report != null) {
-            try (var inputStream = new FileInputStream(report)) {
-                downloadFile(inputStream, "TimePO User timesheet report.xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", report.length(), response);
-            }
+        return timesheetService.fetchReportFromAPI(projects, Set.of(author), fromDate, toDate, false, authorizedClient)
+                .map(report -> reportEntity(report, REPORT_FILE_NAME, REPORT_CONTENT_TYPE));
+    }
+
+    @PostMapping(path = "/reactive/team-report-api", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Mono<ResponseEntity<StreamingResponseBody>> reactiveTeamReportFromAPI(@RequestParam Set<String> projects, @RequestParam Set<String> authors,
+            @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            @RegisteredOAuth2AuthorizedClient("jira") OAuth2AuthorizedClient authorizedClient) {
+        LocalDate fromDate = parseDate(from);
+        LocalDate toDate = parseDate(to);
+        Assert.isTrue(!fromDate.isAfter(toDate), "Invalid date interval: from " + from + " to " + to);
+        return timesheetService.fetchReportFromAPI(projects, authors, fromDate, toDate, true, authorizedClient)
+                .map(report -> reportEntity(report, TEAM_REPORT_FILE_NAME, REPORT_CONTENT_TYPE));
+    }
+
+    /**
+     * Sends the cached report with the key given by its parts, rendering and caching it first if missing, or renders the report straight into the response if
+     * the cache is disabled or the parts are unknown. Cached reports are sent with their key as entity tag, so that clients which already have them receive a 304
+     * Not Modified without any rendering.
+     */
+    private void downloadReport(CacheKeyParts keyParts, ReportSupplier supplier, String fileName, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        List<?> parts = reportCache.isEnabled() ? keyParts.get() : null;
+        if (parts == null) {
+            downloadReport(supplier.get(), fileName, REPORT_CONTENT_TYPE, properties.getReport().isSpoolToFile(), response);
+            return;
+        }
+        String key = ReportCache.key(parts);
+        if (checkNotModified(key, request, response)) {
+            return;
         }
+        CachedReport report = reportCache.open(key, supplier);
+        try (var inputStream = report.inputStream()) {
+            downloadFile(inputStream, fileName, REPORT_CONTENT_TYPE, report.size(), response);
+        }
+    }
+
+    /**
+     * Reads the worklog streamed in the body of the request, answering 413 Payload Too Large if the upload is over its limits. Uploads are not cached, since
+     * their hash is only known once they are read.
+     */
+    private ReportWriter readUpload(Set<String> authors, LocalDate from, LocalDate to, boolean teamReport, HttpServletRequest request) throws IOException {
+        try {
+            return timesheetService.generateReportFromUpload(request.getInputStream(), authors, from, to, teamReport);
+        } catch (LimitExceededException e) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The key parts of a report from Jira, unknown unless the worklog is read from the store. The report is then read from the same sync of the store whose
+     * version is part of the key.
+     */
+    private List<?> apiKeyParts(String fileName, Set<String> projects, Set<String> authors, LocalDate from, LocalDate to, SyncedWorklog synced) {
+        return synced != null ? keyParts(fileName, synced.version(), new TreeSet<>(projects), new TreeSet<>(authors), from, to) : null;
+    }
+
+    /**
+     * The given key parts of a report, along with the settings which change the report rendered from the same worklog.
+     */
+    private List<?> keyParts(Object... parts) {
+        var worklog = properties.getWorklog();
+        List<Object> keyParts = new ArrayList<>(List.of(WorkbookService.LAYOUT_VERSION, properties.getWorkbook().getEngine(), worklog.getHoursPerDay(),
+                worklog.getDaysPerWeek()));
+        keyParts.addAll(Arrays.asList(parts));
+        return keyParts;
+    }
+
+    @FunctionalInterface
+    private interface CacheKeyParts {
+
+        List<?> get() throws IOException;
+
     }
 
 }
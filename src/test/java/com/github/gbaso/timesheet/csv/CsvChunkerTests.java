@@ -0,0 +1,66 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.gbaso.timesheet.csv.CsvChunker.Chunk;
+
+class CsvChunkerTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void splitOnRecordBoundaries() throws IOException {
+        var csv = new StringBuilder("Issue Type,Key,Summary,Log Work.started,Log Work.timeSpent,Log Work.authorDisplayName\n");
+        for (int i = 0; i < 200; i++) {
+            String summary = i % 3 == 0 ? "\"Multi\nline \"\"" + i + "\"\"\n\"" : "Summary " + i;
+            csv.append("Task,K").append(i).append(',').append(summary).append(",16/05/2022 9.09.30,1h,Giacomo Baso\n");
+        }
+        Path file = Files.writeString(tempDir.resolve("worklog.csv"), csv, StandardCharsets.UTF_8);
+
+        byte[] header;
+        try (var inputStream = Files.newInputStream(file)) {
+            header = JiraCsvParser.readHeader(inputStream);
+        }
+        try (var channel = FileChannel.open(file)) {
+            JiraCsvParser parser = JiraCsvParser.forHeader(header).orElseThrow();
+            List<Chunk> chunks = CsvChunker.split(channel, header.length, 7, ForkJoinPool.commonPool());
+            assertThat(chunks).hasSizeGreaterThan(1);
+
+            List<String> keys = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                parser.parse(CsvChunker.map(channel, chunk), record -> keys.add(record.getString(JiraColumn.KEY)));
+            }
+            assertThat(keys).hasSize(200).startsWith("K0", "K1").endsWith("K199").doesNotHaveDuplicates();
+        }
+    }
+
+}
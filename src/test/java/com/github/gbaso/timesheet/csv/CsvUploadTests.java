@@ -0,0 +1,96 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.gbaso.timesheet.csv.CsvUpload.LimitExceededException;
+import com.github.gbaso.timesheet.csv.CsvUpload.RowLimit;
+
+class CsvUploadTests {
+
+    private static final String CSV = "Issue Type,Key,Summary,Log Work.started,Log Work.timeSpent,Log Work.authorDisplayName\n"
+            + "Bug,K1,Test 1,16/05/2022 14.09.30,30m,Giacomo Baso\n";
+
+    @Test
+    void readPlainUpload() throws IOException {
+        try (InputStream content = CsvUpload.open(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)), 1024)) {
+            assertThat(new String(content.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(CSV);
+        }
+    }
+
+    @Test
+    void inflateGzipUpload() throws IOException {
+        try (InputStream content = CsvUpload.open(new ByteArrayInputStream(gzip(CSV.getBytes(StandardCharsets.UTF_8))), 1024)) {
+            assertThat(new String(content.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(CSV);
+        }
+    }
+
+    @Test
+    void readEmptyUpload() throws IOException {
+        try (InputStream content = CsvUpload.open(new ByteArrayInputStream(new byte[0]), 1024)) {
+            assertThat(content.readAllBytes()).isEmpty();
+        }
+    }
+
+    @Test
+    void failOverMaxSize() throws IOException {
+        byte[] csv = CSV.getBytes(StandardCharsets.UTF_8);
+        try (InputStream content = CsvUpload.open(new ByteArrayInputStream(csv), csv.length - 1)) {
+            assertThatThrownBy(content::readAllBytes).isInstanceOf(LimitExceededException.class);
+        }
+        try (InputStream content = CsvUpload.open(new ByteArrayInputStream(csv), csv.length)) {
+            assertThat(content.readAllBytes()).hasSize(csv.length);
+        }
+    }
+
+    @Test
+    void limitInflatedSize() throws IOException {
+        // a small compressed upload inflating to far more than the limit
+        byte[] compressed = gzip(new byte[1024 * 1024]);
+        try (InputStream content = CsvUpload.open(new ByteArrayInputStream(compressed), 64 * 1024)) {
+            assertThatThrownBy(content::readAllBytes).isInstanceOf(LimitExceededException.class);
+        }
+    }
+
+    @Test
+    void failOverMaxRows() {
+        var rowLimit = new RowLimit(2);
+        rowLimit.rowRead();
+        rowLimit.rowRead();
+        assertThatThrownBy(rowLimit::rowRead).isInstanceOf(LimitExceededException.class).hasMessageContaining("2 rows");
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var gzipStream = new GZIPOutputStream(compressed)) {
+            gzipStream.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.csv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import com.github.gbaso.timesheet.utils.TimeUtils;
+
+class JiraCsvParserTests {
+
+    private static final String HEADER = "Issue Type,Key,Summary,Log Work.started,Log Work.timeSpent,Log Work.authorDisplayName\r\n";
+
+    @Test
+    void parse() throws IOException {
+        List<String> records;
+        try (var inputStream = new ClassPathResource("test.csv").getInputStream()) {
+            records = parse(inputStream);
+        }
+        assertThat(records).containsExactly("K1|Test 1|2022-05-16|30|true", "K2|Test 2|2022-05-16|60|true", "K3|Test 3|2022-05-16|60|false");
+    }
+
+    @Test
+    void parseQuotedFields() throws IOException {
+        String csv = HEADER + "Bug,K1,\"Multi\nline, \"\"quoted\"\"\",16/05/2022 14.09.30,1d 30m,\"Giacomo Baso\"\r\n\r\nTask,K2,Test 2,6/5/2022 9.09.30,1h,Tizio Caio";
+        List<String> records = parse(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        assertThat(records).containsExactly("K1|Multi\nline, \"quoted\"|2022-05-16|510|true", "K2|Test 2|2022-05-06|60|false");
+    }
+
+    @Test
+    void unknownLayout() {
+        assertThat(JiraCsvParser.forHeader("Key,Summary\n".getBytes(StandardCharsets.UTF_8))).isEmpty();
+        assertThat(JiraCsvParser.forHeader(("\uFEFF" + HEADER).getBytes(StandardCharsets.UTF_8))).isPresent();
+    }
+
+    private List<String> parse(InputStream inputStream) throws IOException {
+        byte[] author = "Giacomo Baso".getBytes(StandardCharsets.UTF_8);
+        List<String> records = new ArrayList<>();
+        try (inputStream) {
+            JiraCsvParser parser = JiraCsvParser.forHeader(JiraCsvParser.readHeader(inputStream)).orElseThrow();
+            parser.parse(inputStream, record -> {
+                LocalDate started = record.getDate(JiraColumn.STARTED);
+                records.add(String.join("|", record.getString(JiraColumn.KEY), record.getString(JiraColumn.SUMMARY), started.toString(),
+                        String.valueOf(TimeUtils.parseMinutes(record.getAscii(JiraColumn.TIME_SPENT))), String.valueOf(record.matches(JiraColumn.AUTHOR, author))));
+            });
+        }
+        return records;
+    }
+
+}
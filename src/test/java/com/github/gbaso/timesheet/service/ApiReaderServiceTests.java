@@ -0,0 +1,458 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.config.TimesheetProperties.Jira.FetchMode;
+import com.github.gbaso.timesheet.csv.WorklogRow;
+import com.github.gbaso.timesheet.service.ApiReaderService.SyncedWorklog;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+class ApiReaderServiceTests {
+
+    private static final String    author = "Giacomo Baso";
+    private static final LocalDate from   = LocalDate.of(2022, 5, 1);
+    private static final LocalDate to     = LocalDate.of(2022, 5, 31);
+
+    private JiraStubServer         jira;
+    private TimesheetProperties    properties;
+    private MeterRegistry          meterRegistry;
+    private ApiReaderService       service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jira = new JiraStubServer();
+        properties = new TimesheetProperties();
+        properties.getJira().setMinBackoff(Duration.ofMillis(10));
+        meterRegistry = new SimpleMeterRegistry();
+        service = createService();
+        for (int i = 1; i <= 10; i++) {
+            jira.addIssue(String.valueOf(100 + i), "TS-" + i, "Issue " + i, "Task");
+        }
+        for (int i = 1; i <= 50; i++) {
+            jira.addWorklog(i, String.valueOf(100 + (i % 10) + 1), "2022-05-" + String.format("%02d", i % 28 + 1), "1h", i % 5 == 0 ? "Someone Else" : author);
+        }
+        jira.addWorklog(51, "101", "2022-04-30", "2h", author);
+    }
+
+    private ApiReaderService createService() {
+        var worklogStore = new WorklogStore(properties, Jackson2ObjectMapperBuilder.json().build());
+        var issueCache = new IssueCache(properties, meterRegistry);
+        var siteCache = new SiteCache(properties, meterRegistry);
+        var userCache = new UserCache(properties, meterRegistry);
+        return new ApiReaderService(WebClient.builder().baseUrl(jira.getUrl()).build(), properties, worklogStore, issueCache, siteCache, userCache,
+                new ReportMetrics(meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jira.close();
+    }
+
+    @Test
+    void readWorklogConcurrently() {
+        properties.getJira().setWorklogBatchSize(10);
+        properties.getJira().setConcurrency(3);
+        jira.setPageSize(3);
+
+        List<WorklogRow> rows = service.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40).allMatch(row -> row.getAuthor().equals(author) && !row.getStarted().isBefore(from));
+        assertThat(rows).filteredOn(row -> row.getIssueId().equals("102"))
+                .extracting(WorklogRow::getKey, WorklogRow::getSummary, WorklogRow::getType)
+                .containsOnly(tuple("TS-2", "Issue 2", "Task"));
+        assertThat(jira.getCalls("list")).isEqualTo(6);
+        assertThat(jira.getCalls("search")).isEqualTo(3);
+        assertThat(jira.getMaxInFlight()).isBetween(2, 3);
+    }
+
+    @Test
+    void readAllWorklogPages() {
+        jira.setUpdatedPageSize(7);
+
+        List<WorklogRow> rows = service.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40);
+        assertThat(jira.getCalls("updated")).isEqualTo(8);
+    }
+
+    @Test
+    void capWorklogListBatches() {
+        for (int i = 100; i < 2600; i++) {
+            jira.addWorklog(i, "101", "2022-05-02", "1h", "Someone Else");
+        }
+        properties.getJira().setWorklogBatchSize(5000);
+
+        List<WorklogRow> rows = service.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40);
+        assertThat(jira.getCalls("list")).isEqualTo(3);
+        assertThat(jira.getMaxListIds()).isEqualTo(ApiReaderService.MAX_WORKLOG_LIST_IDS);
+    }
+
+    @Test
+    void searchIssuesInChunks() {
+        jira.addWorklog(52, "999", "2022-05-03", "1h", author);
+        properties.getJira().setIssueSearchBatchSize(3);
+
+        List<WorklogRow> rows = service.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40).noneMatch(row -> row.getIssueId().equals("999"));
+        assertThat(jira.getCalls("search")).isEqualTo(3);
+    }
+
+    @Test
+    void searchWorklogsWithJql() {
+        properties.getJira().setFetchMode(FetchMode.JQL);
+        jira.setPageSize(3);
+
+        List<WorklogRow> rows = service.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40).allMatch(row -> row.getAuthor().equals(author) && !row.getStarted().isBefore(from));
+        assertThat(rows).filteredOn(row -> row.getIssueId().equals("102"))
+                .extracting(WorklogRow::getKey, WorklogRow::getSummary, WorklogRow::getType)
+                .containsOnly(tuple("TS-2", "Issue 2", "Task"));
+        assertThat(jira.getCalls("user")).isEqualTo(1);
+        assertThat(jira.getCalls("search")).isEqualTo(3);
+        assertThat(jira.getCalls("worklog")).isEqualTo(16);
+        assertThat(jira.getCalls("updated")).isZero();
+        assertThat(jira.getCalls("list")).isZero();
+
+        service.readWorklog(Set.of("TS"), author, from, to);
+        assertThat(jira.getCalls("user")).isEqualTo(1);
+    }
+
+    @Test
+    void reportUnresolvedAuthors() {
+        properties.getJira().setFetchMode(FetchMode.JQL);
+        var progress = new ReportProgress();
+
+        List<WorklogRow> rows = service.fetchWorklog(Set.of("TS"), Set.of(author, "Nobody"), from, to)
+                .contextWrite(Context.of(ReportProgress.class, progress))
+                .collectList()
+                .block();
+
+        assertThat(rows).hasSize(40);
+        assertThat(progress.getUnresolvedAuthors()).containsExactly("Nobody");
+        assertThat(service.readWorklog(Set.of("TS"), Set.of("Nobody"), from, to)).isEmpty();
+        assertThat(jira.getCalls("search")).isEqualTo(1);
+    }
+
+    @Test
+    void countMissingIssues() {
+        jira.addWorklog(60, "999", "2022-05-10", "1h", author);
+        var progress = new ReportProgress();
+
+        List<WorklogRow> rows = service.fetchWorklog(Set.of(), Set.of(author), from, to)
+                .contextWrite(Context.of(ReportProgress.class, progress))
+                .collectList()
+                .block();
+
+        assertThat(rows).hasSize(40).noneMatch(row -> row.getIssueId().equals("999"));
+        assertThat(progress.getIssuesMissing()).isEqualTo(1);
+    }
+
+    @Test
+    void retryTooManyRequests() {
+        jira.rejectNext(2);
+
+        List<WorklogRow> rows = service.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40);
+        assertThat(jira.getCalls("accessible-resources")).isEqualTo(3);
+    }
+
+    @Test
+    void timeRequestsPerEndpoint() {
+        jira.rejectNext(2);
+        var progress = new ReportProgress();
+
+        service.fetchWorklog(Set.of("TS"), Set.of(author), from, to).contextWrite(Context.of(ReportProgress.class, progress)).blockLast();
+
+        assertThat(meterRegistry.get(ReportMetrics.JIRA_REQUESTS).tags("endpoint", "accessible-resources", "outcome", "CLIENT_ERROR").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get(ReportMetrics.JIRA_REQUESTS).tags("endpoint", "accessible-resources", "outcome", "SUCCESS").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReportMetrics.JIRA_REQUESTS).tags("endpoint", "worklog/updated", "outcome", "SUCCESS").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReportMetrics.JIRA_REQUESTS).tags("endpoint", "worklog/list", "outcome", "SUCCESS").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReportMetrics.JIRA_REQUESTS).tags("endpoint", "search", "outcome", "SUCCESS").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReportMetrics.JIRA_REQUESTS).tags("endpoint", "project", "outcome", "SUCCESS").timer().count()).isEqualTo(1);
+        assertThat(progress.getRequests()).isEqualTo(7);
+        assertThat(progress.getPagesFetched()).isEqualTo(5);
+        assertThat(progress.getRowsParsed()).isEqualTo(51);
+    }
+
+    @Test
+    void resolveSiteOnceForConcurrentRequests() {
+        jira.setLatency(Duration.ofMillis(100));
+
+        List<List<WorklogRow>> results = Flux.range(0, 8)
+                .flatMap(i -> service.fetchWorklog(Set.of("TS"), Set.of(author), from, to).collectList())
+                .collectList()
+                .block();
+
+        assertThat(results).hasSize(8).allSatisfy(rows -> assertThat(rows).hasSize(40));
+        assertThat(jira.getCalls("accessible-resources")).isEqualTo(1);
+    }
+
+    @Test
+    void cacheSitesPerClient() {
+        var client = authorizedClient("token-1", "account-1");
+        var otherClient = authorizedClient("token-2", "account-2");
+
+        readWorklog(client);
+        readWorklog(otherClient);
+        readWorklog(client);
+        // a refreshed token of the same principal
+        readWorklog(authorizedClient("token-3", "account-1"));
+
+        assertThat(jira.getCalls("accessible-resources")).isEqualTo(2);
+        assertThat(service.getSites(otherClient).block()).extracting(JiraSite::id).containsExactly(JiraStubServer.CLOUD_ID);
+        assertThat(jira.getCalls("accessible-resources")).isEqualTo(2);
+    }
+
+    @Test
+    void resolveSiteAgainWhenUnauthorized() {
+        service.readWorklog(Set.of("TS"), author, from, to);
+        jira.failNext(401);
+
+        assertThatExceptionOfType(WebClientResponseException.Unauthorized.class).isThrownBy(() -> service.readWorklog(Set.of("TS"), author, from, to));
+        assertThat(service.readWorklog(Set.of("TS"), author, from, to)).hasSize(40);
+        assertThat(jira.getCalls("accessible-resources")).isEqualTo(2);
+    }
+
+    @Test
+    void keepSitesWhenNotFound() {
+        service.readWorklog(Set.of("TS"), author, from, to);
+        jira.failNext(404);
+
+        catchThrowable(() -> service.readWorklog(Set.of("TS"), author, from, to));
+        assertThat(service.readWorklog(Set.of("TS"), author, from, to)).hasSize(40);
+        assertThat(jira.getCalls("accessible-resources")).isEqualTo(1);
+    }
+
+    @Test
+    void selectConfiguredSite(@TempDir Path storeDirectory) {
+        jira.addSite("cloud-2", "https://other.atlassian.net", "other");
+        properties.getJira().setStoreDirectory(storeDirectory);
+        properties.getJira().setSite("https://other.atlassian.net");
+
+        assertThat(service.syncWorklog(from).map(SyncedWorklog::version).block()).startsWith("cloud-2:");
+        assertThat(jira.getCloudIds()).containsOnly("cloud-2");
+
+        properties.getJira().setSite("unknown");
+        assertThatIllegalArgumentException().isThrownBy(() -> service.syncWorklog(from).block()).withMessageContaining("unknown");
+    }
+
+    @Test
+    void cacheIssues() {
+        service.readWorklog(Set.of("TS"), author, from, to);
+        service.readWorklog(Set.of("TS"), author, from, to);
+        List<WorklogRow> rows = service.readWorklog(Set.of("OTHER"), author, from, to);
+
+        assertThat(rows).isEmpty();
+        assertThat(jira.getCalls("search")).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", IssueCache.NAME, "result", "miss").functionCounter().count()).isEqualTo(8);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", IssueCache.NAME, "result", "hit").functionCounter().count()).isEqualTo(16);
+    }
+
+    @Test
+    void filterProjectsByKeyNameOrId() {
+        jira.addIssue("201", "OT-1", "Other issue", "Bug");
+        jira.addWorklog(70, "201", "2022-05-10", "1h", author);
+
+        assertThat(service.readWorklog(Set.of("ts"), author, from, to)).hasSize(40);
+        assertThat(service.readWorklog(Set.of("Project TS"), author, from, to)).hasSize(40);
+        assertThat(service.readWorklog(Set.of(jira.getProjectId("TS")), author, from, to)).hasSize(40);
+        assertThat(service.readWorklog(Set.of("TS", "Project OT"), author, from, to)).hasSize(41);
+        assertThat(service.readWorklog(Set.of("Unknown"), author, from, to)).isEmpty();
+    }
+
+    @Test
+    void filterStoredProjectsByNameOrId(@TempDir Path storeDirectory) {
+        properties.getJira().setStoreDirectory(storeDirectory);
+        jira.addIssue("201", "OT-1", "Other issue", "Bug");
+        jira.addWorklog(70, "201", "2022-05-10", "1h", author);
+
+        assertThat(service.readWorklog(Set.of("Project TS"), author, from, to)).hasSize(40).noneMatch(row -> row.getKey().equals("OT-1"));
+        assertThat(service.readWorklog(Set.of(jira.getProjectId("OT")), author, from, to)).singleElement().extracting(WorklogRow::getKey).isEqualTo("OT-1");
+    }
+
+    @Test
+    void syncStoreIncrementally(@TempDir Path storeDirectory) {
+        properties.getJira().setStoreDirectory(storeDirectory);
+
+        assertThat(service.readWorklog(Set.of("TS"), author, from, to)).hasSize(40);
+        assertThat(storeDirectory.resolve(JiraStubServer.CLOUD_ID)).isDirectory();
+        assertThat(jira.getCalls("list")).isEqualTo(1);
+        assertThat(jira.getCalls("search")).isEqualTo(1);
+
+        assertThat(service.readWorklog(Set.of("TS"), author, from, to)).hasSize(40);
+        assertThat(jira.getCalls("list")).isEqualTo(1);
+        assertThat(jira.getCalls("search")).isEqualTo(1);
+        assertThat(jira.getCalls("deleted")).isEqualTo(1);
+
+        jira.deleteWorklog(1);
+        jira.addWorklog(60, "102", "2022-05-10", "30m", author);
+        List<WorklogRow> rows = service.readWorklog(Set.of("TS"), author, from, to);
+        assertThat(rows).hasSize(40).extracting(WorklogRow::getTimeSpent).contains("30m");
+        assertThat(jira.getCalls("list")).isEqualTo(2);
+        assertThat(jira.getCalls("search")).isEqualTo(1);
+    }
+
+    @Test
+    void changeDataVersionWithWorklog(@TempDir Path storeDirectory) {
+        assertThat(service.syncWorklog(from).map(SyncedWorklog::version).blockOptional()).isEmpty();
+
+        properties.getJira().setStoreDirectory(storeDirectory);
+        String version = service.syncWorklog(from).map(SyncedWorklog::version).block();
+        assertThat(version).startsWith(JiraStubServer.CLOUD_ID + ":");
+        assertThat(service.syncWorklog(from).map(SyncedWorklog::version).block()).isEqualTo(version);
+
+        jira.addWorklog(60, "102", "2022-05-10", "30m", author);
+        assertThat(service.syncWorklog(from).map(SyncedWorklog::version).block()).isNotEqualTo(version);
+    }
+
+    @Test
+    void readSyncedWorklog(@TempDir Path storeDirectory) {
+        properties.getJira().setStoreDirectory(storeDirectory);
+
+        SyncedWorklog synced = service.syncWorklog(from).block();
+        List<WorklogRow> rows = service.fetchWorklog(Set.of("TS"), Set.of(author), from, to, synced).collectList().block();
+
+        assertThat(rows).hasSize(40);
+        assertThat(jira.getCalls("updated")).isEqualTo(1);
+        assertThat(jira.getCalls("deleted")).isZero();
+    }
+
+    @Test
+    void syncStoreConcurrently(@TempDir Path storeDirectory) {
+        properties.getJira().setStoreDirectory(storeDirectory);
+        String version = service.syncWorklog(from).map(SyncedWorklog::version).block();
+        jira.addWorklog(60, "102", "2022-05-10", "30m", author);
+
+        List<String> versions = Flux.range(0, 4)
+                .flatMap(i -> service.syncWorklog(from).subscribeOn(Schedulers.parallel()))
+                .map(SyncedWorklog::version)
+                .collectList()
+                .block();
+
+        // the syncs which read the same snapshot find the same changes, only the first one applied changes the version
+        assertThat(versions).hasSize(4).doesNotContain(version).containsOnly(versions.get(0));
+        assertThat(service.readWorklog(Set.of("TS"), author, from, to)).hasSize(41);
+    }
+
+    @Test
+    void readStoredIssuesAgain(@TempDir Path storeDirectory) {
+        properties.getJira().setStoreDirectory(storeDirectory);
+        service.readWorklog(Set.of("TS"), author, from, to);
+        jira.addIssue("102", "TS-2", "Renamed issue", "Task");
+
+        properties.getJira().setIssueCacheTimeToLive(Duration.ZERO);
+        properties.getJira().setStoreIssueTimeToLive(Duration.ZERO);
+        var restarted = createService();
+        List<WorklogRow> rows = restarted.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40).extracting(WorklogRow::getSummary).contains("Renamed issue").doesNotContain("Issue 2");
+        assertThat(jira.getCalls("search")).isEqualTo(2);
+    }
+
+    @Test
+    void readStoreFromFile(@TempDir Path storeDirectory) throws IOException {
+        properties.getJira().setStoreDirectory(storeDirectory);
+        service.readWorklog(Set.of("TS"), author, from, to);
+
+        var restarted = createService();
+        List<WorklogRow> rows = restarted.readWorklog(Set.of("TS"), author, from, to);
+
+        assertThat(rows).hasSize(40);
+        assertThat(jira.getCalls("list")).isEqualTo(1);
+        try (var files = Files.list(storeDirectory)) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    @Test
+    void keepStorePerPrincipal(@TempDir Path storeDirectory) {
+        properties.getJira().setStoreDirectory(storeDirectory);
+        var client = authorizedClient("token-1", "account-1");
+        var otherClient = authorizedClient("token-2", "account-2");
+
+        assertThat(readWorklog(client)).hasSize(40);
+        jira.addWorklog(60, "102", "2022-05-10", "30m", author);
+        assertThat(readWorklog(otherClient)).hasSize(41);
+        assertThat(jira.getCalls("list")).isEqualTo(2);
+        assertThat(jira.getCalls("search")).isEqualTo(2);
+        assertThat(syncWorklog(client).account()).isNotEqualTo(syncWorklog(otherClient).account());
+    }
+
+    private List<WorklogRow> readWorklog(OAuth2AuthorizedClient client) {
+        return service.fetchWorklog(Set.of("TS"), Set.of(author), from, to)
+                .contextWrite(Context.of(OAuth2AuthorizedClient.class, client))
+                .collectList()
+                .block();
+    }
+
+    private SyncedWorklog syncWorklog(OAuth2AuthorizedClient client) {
+        return service.syncWorklog(from).contextWrite(Context.of(OAuth2AuthorizedClient.class, client)).block();
+    }
+
+    private static OAuth2AuthorizedClient authorizedClient(String token) {
+        return authorizedClient(token, author);
+    }
+
+    private static OAuth2AuthorizedClient authorizedClient(String token, String principal) {
+        var registration = ClientRegistration.withRegistrationId("jira")
+                .clientId("timesheet")
+                .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+                .tokenUri("https://auth.atlassian.com/oauth/token")
+                .build();
+        var accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, token, Instant.now(), Instant.now().plusSeconds(3600));
+        return new OAuth2AuthorizedClient(registration, principal, accessToken);
+    }
+
+}
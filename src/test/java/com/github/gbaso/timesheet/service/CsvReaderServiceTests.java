@@ -1,24 +1,107 @@
 package com.github.gbaso.timesheet.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.core.io.ClassPathResource;
 
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.csv.CsvUpload.LimitExceededException;
+import com.github.gbaso.timesheet.csv.CsvUpload.RowLimit;
 import com.github.gbaso.timesheet.csv.WorklogRow;
+import com.github.gbaso.timesheet.service.Timesheet.IssueRow;
 
 class CsvReaderServiceTests {
 
     @Test
     void readWorklog() throws IOException {
-        var service = new CsvReaderService();
+        var service = new CsvReaderService(new TimesheetProperties());
         var testFile = new ClassPathResource("test.csv");
-        List<WorklogRow> worklogs = service.readWorklog(testFile.getInputStream(), "Giacomo Baso", LocalDate.now(), LocalDate.now());
-        assertThat(worklogs).hasSize(2);
+        try (var inputStream = testFile.getInputStream()) {
+            List<WorklogRow> worklogs = service.readWorklog(inputStream, "Giacomo Baso", LocalDate.now(), LocalDate.now());
+            assertThat(worklogs).hasSize(2);
+        }
+    }
+
+    @Test
+    void readWorklogIntoTimesheet() throws IOException {
+        var service = new CsvReaderService(new TimesheetProperties());
+        var testFile = new ClassPathResource("test.csv");
+        LocalDate date = LocalDate.of(2022, 5, 16);
+        var timesheet = new Timesheet(date, date);
+        try (var inputStream = testFile.getInputStream()) {
+            service.readWorklog(inputStream, "Giacomo Baso", date, date, timesheet);
+        }
+        assertThat(timesheet.getIssueRows()).extracting(IssueRow::getKey, IssueRow::getSummary, IssueRow::getTotal)
+                .containsExactly(tuple("K1", "Test 1", 30), tuple("K2", "Test 2", 60));
+        assertThat(timesheet.getTotal(0)).isEqualTo(90);
+    }
+
+    @Test
+    void readTeamWorklog() throws IOException {
+        var service = new CsvReaderService(new TimesheetProperties());
+        var testFile = new ClassPathResource("test.csv");
+        LocalDate date = LocalDate.of(2022, 5, 16);
+        var team = new TeamTimesheet(date, date, List.of("Tizio Caio", "Giacomo Baso", "Nobody"));
+        try (var inputStream = testFile.getInputStream()) {
+            service.readWorklog(inputStream, team);
+        }
+        assertThat(team.getTimesheet("Giacomo Baso").getTotal()).isEqualTo(90);
+        assertThat(team.getTimesheet("Tizio Caio").getIssueRows()).extracting(IssueRow::getKey, IssueRow::getTotal).containsExactly(tuple("K3", 60));
+        assertThat(team.getTimesheet("Nobody").getIssueRows()).isEmpty();
+        assertThat(team.getSummary().getIssueRows()).extracting(IssueRow::getKey, IssueRow::getTotal)
+                .containsExactly(tuple("Giacomo Baso", 90), tuple("Nobody", 0), tuple("Tizio Caio", 60));
+    }
+
+    @Test
+    void limitUploadRows() throws IOException {
+        var service = new CsvReaderService(new TimesheetProperties());
+        var testFile = new ClassPathResource("test.csv");
+        LocalDate date = LocalDate.of(2022, 5, 16);
+        var team = new TeamTimesheet(date, date, List.of("Giacomo Baso"));
+        try (var inputStream = testFile.getInputStream()) {
+            service.readWorklog(inputStream, team, new RowLimit(3));
+        }
+        assertThat(team.getTimesheet("Giacomo Baso").getTotal()).isEqualTo(90);
+        var overLimit = new TeamTimesheet(date, date, List.of("Giacomo Baso"));
+        try (var inputStream = testFile.getInputStream()) {
+            assertThatThrownBy(() -> service.readWorklog(inputStream, overLimit, new RowLimit(2))).isInstanceOf(LimitExceededException.class);
+        }
+    }
+
+    @Test
+    void readLargeFileOnBoundedPool(@TempDir Path tempDir) throws IOException {
+        var properties = new TimesheetProperties();
+        properties.getCsv().setMaxParallelism(4);
+        properties.getCsv().setThreads(1);
+        properties.getCsv().setQueueCapacity(1);
+        var service = new CsvReaderService(properties);
+        int records = 200_000;
+        var csv = new StringBuilder("Issue Type,Key,Summary,Log Work.started,Log Work.timeSpent,Log Work.authorDisplayName\n");
+        for (int i = 0; i < records; i++) {
+            csv.append("Task,K").append(i % 100).append(",Summary of issue ").append(i % 100).append(",16/05/2022 9.09.30,1h,Giacomo Baso\n");
+        }
+        Path file = Files.writeString(tempDir.resolve("worklog.csv"), csv, StandardCharsets.UTF_8);
+        LocalDate date = LocalDate.of(2022, 5, 16);
+        var team = new TeamTimesheet(date, date, List.of("Giacomo Baso"));
+        try {
+            service.readWorklog(file, team);
+        } finally {
+            service.destroy();
+        }
+        assertThat(Files.size(file)).isGreaterThan(8L * 1024 * 1024);
+        assertThat(team.getTimesheet("Giacomo Baso").getTotal()).isEqualTo(records * 60);
+        assertThat(team.getTimesheet("Giacomo Baso").getIssueRows()).hasSize(100);
     }
 
 }
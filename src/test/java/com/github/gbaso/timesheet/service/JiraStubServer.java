@@ -0,0 +1,359 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal Jira Cloud REST API serving in-memory worklogs and issues, to test {@link ApiReaderService} over real HTTP.
+ */
+class JiraStubServer implements AutoCloseable {
+
+    static final String                             CLOUD_ID        = "cloud-1";
+
+    /**
+     * Update time of the worklog with id 0, the others being updated one millisecond apart in id order.
+     */
+    static final long                               UPDATED         = 1_700_000_000_000L;
+
+    private static final DateTimeFormatter          STARTED         = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private static final Pattern                    CLOUD_PATH      = Pattern.compile("^/ex/jira/([^/]+)/");
+    private static final Pattern                    ISSUE_IDS       = Pattern.compile("id in \\(([^)]*)\\)");
+    private static final Pattern                    WORKLOG_AUTHOR  = Pattern.compile("worklogAuthor in \\(([^)]*)\\)");
+    private static final Pattern                    WORKLOG_DATE    = Pattern.compile("worklogDate ([<>]=) \"([^\"]*)\"");
+
+    private final ObjectMapper                      mapper          = new ObjectMapper();
+    private final Map<Integer, Map<String, Object>> worklogs        = new LinkedHashMap<>();
+    private final Map<String, Object>               issues          = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>>  projects        = new LinkedHashMap<>();
+    private final Map<Integer, Long>                deleted         = new LinkedHashMap<>();
+    private final List<Map<String, Object>>         sites           = new ArrayList<>(
+            List.of(Map.of("id", CLOUD_ID, "url", "https://test.atlassian.net", "name", "test")));
+    private final Map<String, AtomicInteger>        calls           = new ConcurrentHashMap<>();
+    private final Set<String>                       cloudIds        = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger                     tooManyRequests = new AtomicInteger();
+    private final AtomicInteger                     failNext        = new AtomicInteger();
+    private final AtomicInteger                     inFlight        = new AtomicInteger();
+    private final AtomicInteger                     maxInFlight     = new AtomicInteger();
+    private final AtomicInteger                     maxListIds      = new AtomicInteger();
+    private final ExecutorService                   executor        = Executors.newCachedThreadPool();
+    private final HttpServer                        server;
+    private int                                     pageSize        = 50;
+    private int                                     updatedPageSize = 1000;
+    private long                                    latencyMillis   = 20;
+
+    JiraStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    void addWorklog(int id, String issueId, String started, String timeSpent, String author) {
+        worklogs.put(id, Map.of("id", id, "issueId", issueId, "started", started + "T09:00:00.000+0000", "timeSpent", timeSpent, "author",
+                Map.of("accountId", accountId(author), "displayName", author)));
+    }
+
+    static String accountId(String displayName) {
+        return "account-" + displayName.toLowerCase().replace(' ', '-');
+    }
+
+    /**
+     * Deletes a worklog, recording the deletion after the update of any worklog added so far.
+     */
+    void deleteWorklog(int id) {
+        worklogs.remove(id);
+        deleted.put(id, UPDATED + 1_000_000 + deleted.size());
+    }
+
+    /**
+     * Adds an issue to the project of its key prefix, added with id {@code 10000}, {@code 10001} and so on, and named {@code Project <key>}, if new.
+     */
+    void addIssue(String id, String key, String summary, String type) {
+        Map<String, Object> project = projects.computeIfAbsent(key.substring(0, key.indexOf('-')),
+                projectKey -> Map.of("id", String.valueOf(10_000 + projects.size()), "key", projectKey, "name", "Project " + projectKey));
+        issues.put(id, Map.of("id", id, "key", key, "fields", Map.of("summary", summary, "issuetype", Map.of("name", type), "project", project)));
+    }
+
+    String getProjectId(String key) {
+        return (String) projects.get(key).get("id");
+    }
+
+    void addSite(String id, String url, String name) {
+        sites.add(Map.of("id", id, "url", url, "name", name));
+    }
+
+    void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    void setUpdatedPageSize(int updatedPageSize) {
+        this.updatedPageSize = updatedPageSize;
+    }
+
+    void setLatency(Duration latency) {
+        this.latencyMillis = latency.toMillis();
+    }
+
+    /**
+     * Rejects the next requests with 429 Too Many Requests.
+     */
+    void rejectNext(int count) {
+        tooManyRequests.set(count);
+    }
+
+    /**
+     * Fails the next request with the given status.
+     */
+    void failNext(int status) {
+        failNext.set(status);
+    }
+
+    int getCalls(String endpoint) {
+        return calls.getOrDefault(endpoint, new AtomicInteger()).get();
+    }
+
+    /**
+     * The cloud ids of the site API requests received so far.
+     */
+    Set<String> getCloudIds() {
+        return Set.copyOf(cloudIds);
+    }
+
+    int getMaxListIds() {
+        return maxListIds.get();
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String endpoint = path.endsWith("/user/search") ? "user" : path.contains("/project/") ? "project" : path.substring(path.lastIndexOf('/') + 1);
+            calls.computeIfAbsent(endpoint, e -> new AtomicInteger()).incrementAndGet();
+            Matcher cloudPath = CLOUD_PATH.matcher(path);
+            if (cloudPath.find()) {
+                cloudIds.add(cloudPath.group(1));
+            }
+            int status = failNext.getAndSet(0);
+            if (status > 0) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            if (tooManyRequests.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            // keep a few requests in flight at the same time
+            Thread.sleep(latencyMillis);
+            Object body = switch (endpoint) {
+                case "accessible-resources" -> sites;
+                case "updated" -> updatedWorklogs(queryParams(exchange));
+                case "deleted" -> deletedWorklogs(queryParams(exchange));
+                case "user" -> users(queryParams(exchange));
+                case "project" -> project(path.substring(path.lastIndexOf('/') + 1), queryParams(exchange));
+                case "worklog" -> issueWorklogs(path.split("/")[path.split("/").length - 2], queryParams(exchange));
+                case "list" -> listWorklogs(mapper.readTree(exchange.getRequestBody()));
+                case "search" -> "POST".equals(exchange.getRequestMethod()) ? search(mapper.readTree(exchange.getRequestBody())) : null;
+                default -> null;
+            };
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] json = mapper.writeValueAsBytes(body);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            exchange.getResponseBody().write(json);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private Map<String, Object> updatedWorklogs(Map<String, String> params) {
+        long since = Long.parseLong(params.getOrDefault("since", "0"));
+        List<Integer> updated = worklogs.keySet().stream().filter(id -> UPDATED + id >= since).sorted().toList();
+        List<Integer> page = updated.subList(0, Math.min(updatedPageSize, updated.size()));
+        long until = page.isEmpty() ? since : UPDATED + page.get(page.size() - 1) + 1;
+        return Map.of("values", page.stream().map(id -> Map.of("worklogId", id, "updatedTime", UPDATED + id)).toList(), "since", since, "until", until,
+                "lastPage", page.size() == updated.size());
+    }
+
+    private Map<String, Object> deletedWorklogs(Map<String, String> params) {
+        long since = Long.parseLong(params.getOrDefault("since", "0"));
+        List<Map<String, Object>> values = deleted.entrySet().stream()
+                .filter(e -> e.getValue() >= since)
+                .map(e -> Map.<String, Object> of("worklogId", e.getKey(), "updatedTime", e.getValue()))
+                .toList();
+        long until = values.stream().mapToLong(value -> (Long) value.get("updatedTime") + 1).max().orElse(since);
+        return Map.of("values", values, "since", since, "until", until, "lastPage", true);
+    }
+
+    private List<Object> listWorklogs(JsonNode request) {
+        maxListIds.accumulateAndGet(request.get("ids").size(), Math::max);
+        List<Object> result = new ArrayList<>();
+        request.get("ids").forEach(id -> {
+            Object worklog = worklogs.get(id.asInt());
+            if (worklog != null) {
+                result.add(worklog);
+            }
+        });
+        return result;
+    }
+
+    private List<Object> users(Map<String, String> params) {
+        String query = params.getOrDefault("query", "");
+        return worklogs.values().stream()
+                .map(worklog -> (Map<?, ?>) worklog.get("author"))
+                .filter(author -> ((String) author.get("displayName")).contains(query))
+                .distinct()
+                .map(Object.class::cast)
+                .toList();
+    }
+
+    /**
+     * A project by id or key, or the page of the projects whose key or name contains the query.
+     */
+    private Object project(String idOrKey, Map<String, String> params) {
+        if (idOrKey.equals("search")) {
+            String query = params.getOrDefault("query", "").toLowerCase();
+            List<Object> matching = projects.values().stream()
+                    .filter(project -> ((String) project.get("key")).toLowerCase().contains(query) || ((String) project.get("name")).toLowerCase().contains(query))
+                    .map(Object.class::cast)
+                    .toList();
+            return Map.of("values", matching, "isLast", true);
+        }
+        return projects.values().stream()
+                .filter(project -> project.get("id").equals(idOrKey) || ((String) project.get("key")).equalsIgnoreCase(idOrKey))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private Map<String, Object> issueWorklogs(String issueId, Map<String, String> params) {
+        int startAt = Integer.parseInt(params.getOrDefault("startAt", "0"));
+        long startedAfter = Long.parseLong(params.getOrDefault("startedAfter", "0"));
+        long startedBefore = Long.parseLong(params.getOrDefault("startedBefore", String.valueOf(Long.MAX_VALUE)));
+        List<Object> matching = worklogs.values().stream()
+                .filter(worklog -> worklog.get("issueId").equals(issueId))
+                .filter(worklog -> {
+                    long started = OffsetDateTime.parse((String) worklog.get("started"), STARTED).toInstant().toEpochMilli();
+                    return started >= startedAfter && started <= startedBefore;
+                })
+                .map(Object.class::cast)
+                .toList();
+        List<Object> page = matching.subList(Math.min(startAt, matching.size()), Math.min(startAt + pageSize, matching.size()));
+        return Map.of("startAt", startAt, "maxResults", pageSize, "total", matching.size(), "worklogs", page);
+    }
+
+    private Map<String, Object> search(JsonNode request) {
+        int startAt = request.path("startAt").asInt();
+        int maxResults = Math.min(request.path("maxResults").asInt(50), pageSize);
+        String jql = request.path("jql").asText();
+        List<Object> matching = issues.entrySet().stream().filter(e -> matches(jql, e.getKey())).map(Map.Entry::getValue).toList();
+        List<Object> page = matching.subList(Math.min(startAt, matching.size()), Math.min(startAt + maxResults, matching.size()));
+        return Map.of("startAt", startAt, "maxResults", maxResults, "total", matching.size(), "issues", page);
+    }
+
+    /**
+     * Evaluates the subset of JQL used by {@link ApiReaderService}: ids, or worklog author and dates.
+     */
+    private boolean matches(String jql, String issueId) {
+        Matcher ids = ISSUE_IDS.matcher(jql);
+        if (ids.find()) {
+            return Arrays.stream(ids.group(1).split(",")).map(String::trim).anyMatch(issueId::equals);
+        }
+        Matcher author = WORKLOG_AUTHOR.matcher(jql);
+        List<String> accountIds = author.find() ? Arrays.stream(author.group(1).split(",")).map(id -> id.trim().replace("\"", "")).toList() : null;
+        LocalDate from = LocalDate.MIN;
+        LocalDate to = LocalDate.MAX;
+        Matcher dates = WORKLOG_DATE.matcher(jql);
+        while (dates.find()) {
+            if (dates.group(1).equals(">=")) {
+                from = LocalDate.parse(dates.group(2));
+            } else {
+                to = LocalDate.parse(dates.group(2));
+            }
+        }
+        LocalDate worklogFrom = from;
+        LocalDate worklogTo = to;
+        return worklogs.values().stream().anyMatch(worklog -> {
+            LocalDate started = LocalDate.parse(((String) worklog.get("started")).substring(0, 10));
+            return worklog.get("issueId").equals(issueId)
+                    && (accountIds == null || accountIds.contains(((Map<?, ?>) worklog.get("author")).get("accountId")))
+                    && !started.isBefore(worklogFrom) && !started.isAfter(worklogTo);
+        });
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq > 0) {
+                    params.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return params;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.ReportAdmission.Permit;
+import com.github.gbaso.timesheet.service.ReportAdmission.RejectedException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReportAdmissionTests {
+
+    private TimesheetProperties properties;
+    private MeterRegistry       meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TimesheetProperties();
+        var config = properties.getAdmission();
+        config.setMaxCost(4);
+        config.setMaxUserCost(3);
+        config.setUploadSizePerCost(DataSize.ofMegabytes(1));
+        config.setMaxQueueLength(1);
+        config.setMaxWait(Duration.ofMillis(200));
+        config.setRetryAfter(Duration.ofSeconds(15));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void estimateCost() {
+        var admission = new ReportAdmission(properties, meterRegistry);
+        LocalDate from = LocalDate.of(2021, 6, 1);
+        assertThat(admission.cost(from, from, 0)).isEqualTo(1);
+        assertThat(admission.cost(from, LocalDate.of(2021, 6, 30), 0)).isEqualTo(1);
+        assertThat(admission.cost(from, LocalDate.of(2021, 7, 31), 0)).isEqualTo(2);
+        assertThat(admission.cost(from, from, DataSize.ofKilobytes(1).toBytes())).isEqualTo(2);
+        assertThat(admission.cost(from, LocalDate.of(2022, 6, 1), DataSize.ofMegabytes(10).toBytes())).isEqualTo(3);
+    }
+
+    @Test
+    void rejectOverUserBudget() throws InterruptedException {
+        var admission = new ReportAdmission(properties, meterRegistry);
+        Permit permit = admission.admit("alice", 2);
+        assertThatThrownBy(() -> admission.admit("alice", 2)).isInstanceOf(RejectedException.class);
+        admission.admit("bob", 2).release();
+        permit.release();
+        admission.admit("alice", 3).release();
+        assertThat(meterRegistry.get(ReportAdmission.REJECTED).tag("reason", "user").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void queueUntilReleased() throws Exception {
+        var admission = new ReportAdmission(properties, meterRegistry);
+        properties.getAdmission().setMaxWait(Duration.ofSeconds(10));
+        Permit permit = admission.admit("alice", 3);
+        var queued = CompletableFuture.supplyAsync(() -> admit(admission, "bob", 2));
+        while (meterRegistry.get(ReportAdmission.QUEUE).gauge().value() < 1) {
+            Thread.sleep(10);
+        }
+        assertThat(queued).isNotDone();
+        assertThat(meterRegistry.get(ReportAdmission.COST).gauge().value()).isEqualTo(3);
+        permit.release();
+        queued.get(5, TimeUnit.SECONDS).release();
+        assertThat(meterRegistry.get(ReportAdmission.QUEUE).gauge().value()).isZero();
+        assertThat(meterRegistry.get(ReportAdmission.COST).gauge().value()).isZero();
+    }
+
+    @Test
+    void rejectAfterMaxWait() throws InterruptedException {
+        var admission = new ReportAdmission(properties, meterRegistry);
+        Permit permit = admission.admit("alice", 3);
+        assertThatThrownBy(() -> admission.admit("bob", 2)).isInstanceOfSatisfying(RejectedException.class,
+                e -> assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(15)));
+        permit.release();
+        // the cost of the rejected report is not held
+        admission.admit("bob", 3).release();
+        assertThat(meterRegistry.get(ReportAdmission.REJECTED).tag("reason", "timeout").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectWhenQueueIsFull() throws Exception {
+        var admission = new ReportAdmission(properties, meterRegistry);
+        properties.getAdmission().setMaxWait(Duration.ofSeconds(10));
+        Permit permit = admission.admit("alice", 3);
+        var queued = CompletableFuture.supplyAsync(() -> admit(admission, "bob", 2));
+        while (meterRegistry.get(ReportAdmission.QUEUE).gauge().value() < 1) {
+            Thread.sleep(10);
+        }
+        assertThatThrownBy(() -> admission.admit("carol", 2)).isInstanceOf(RejectedException.class);
+        assertThat(meterRegistry.get(ReportAdmission.REJECTED).tag("reason", "queue").counter().count()).isEqualTo(1);
+        permit.release();
+        queued.get(5, TimeUnit.SECONDS).release();
+    }
+
+    @Test
+    void rejectWithoutWaiting() throws InterruptedException {
+        var admission = new ReportAdmission(properties, meterRegistry);
+        properties.getAdmission().setMaxWait(Duration.ofSeconds(10));
+        Permit permit = admission.admit("alice", 3);
+        assertThatThrownBy(() -> admission.tryAdmit("bob", 2)).isInstanceOf(RejectedException.class);
+        assertThat(meterRegistry.get(ReportAdmission.QUEUE).gauge().value()).isZero();
+        assertThat(meterRegistry.get(ReportAdmission.REJECTED).tag("reason", "busy").counter().count()).isEqualTo(1);
+        permit.release();
+        // the cost of the rejected report is not held
+        admission.tryAdmit("bob", 3).release();
+    }
+
+    @Test
+    void releaseOnlyOnce() throws InterruptedException {
+        var admission = new ReportAdmission(properties, meterRegistry);
+        Permit permit = admission.admit("alice", 2);
+        permit.release();
+        permit.release();
+        assertThat(meterRegistry.get(ReportAdmission.COST).gauge().value()).isZero();
+        Permit other = admission.admit("bob", 3);
+        assertThatThrownBy(() -> admission.admit("alice", 2)).isInstanceOf(RejectedException.class);
+        other.release();
+    }
+
+    private static Permit admit(ReportAdmission admission, String user, int cost) {
+        try {
+            return admission.admit(user, cost);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.ReportCache.CachedReport;
+
+class ReportCacheTests {
+
+    @TempDir
+    Path                        directory;
+
+    private TimesheetProperties properties;
+    private ReportCache         cache;
+    private AtomicInteger       renders;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TimesheetProperties();
+        properties.getReport().setCacheDirectory(directory);
+        cache = new ReportCache(properties);
+        renders = new AtomicInteger();
+    }
+
+    @Test
+    void keyDependsOnAllParts() throws IOException {
+        String hash = ReportCache.hash(new ByteArrayInputStream("csv".getBytes(StandardCharsets.UTF_8)));
+        String key = ReportCache.key(List.of(hash, "Giacomo Baso", LocalDate.of(2022, 5, 1)));
+
+        assertThat(key).hasSize(64).isEqualTo(ReportCache.key(List.of(hash, "Giacomo Baso", LocalDate.of(2022, 5, 1))));
+        assertThat(key).isNotEqualTo(ReportCache.key(List.of(hash, "Giacomo Baso", LocalDate.of(2022, 5, 2))));
+        assertThat(ReportCache.key(List.of("ab", "c"))).isNotEqualTo(ReportCache.key(List.of("a", "bc")));
+    }
+
+    @Test
+    void renderOnlyOnce() throws IOException {
+        String key = ReportCache.key(List.of("report"));
+
+        assertThat(read(cache.open(key, () -> render("content")))).isEqualTo("content");
+        assertThat(read(cache.open(key, () -> render("other")))).isEqualTo("content");
+        assertThat(renders).hasValue(1);
+        assertThat(directory.resolve(key + ".xlsx")).exists();
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() throws IOException {
+        properties.getReport().setCacheMaxSize(DataSize.ofBytes(20));
+        String first = ReportCache.key(List.of("first"));
+        String second = ReportCache.key(List.of("second"));
+        String third = ReportCache.key(List.of("third"));
+        read(cache.open(first, () -> render("0123456789")));
+        read(cache.open(second, () -> render("0123456789")));
+        read(cache.open(first, () -> render("0123456789")));
+
+        read(cache.open(third, () -> render("0123456789")));
+        assertThat(directory.resolve(first + ".xlsx")).exists();
+        assertThat(directory.resolve(second + ".xlsx")).doesNotExist();
+        assertThat(directory.resolve(third + ".xlsx")).exists();
+        assertThat(renders).hasValue(3);
+    }
+
+    @Test
+    void reloadAfterRestart() throws IOException {
+        String key = ReportCache.key(List.of("report"));
+        read(cache.open(key, () -> render("content")));
+        Path leftover = Files.createTempFile(directory, key, ".tmp");
+        Path unrelated = Files.createFile(directory.resolve("notes.txt"));
+
+        var restarted = new ReportCache(properties);
+        assertThat(read(restarted.open(key, () -> render("other")))).isEqualTo("content");
+        assertThat(renders).hasValue(1);
+        assertThat(leftover).doesNotExist();
+        assertThat(unrelated).exists();
+    }
+
+    private ReportWriter render(String content) {
+        renders.incrementAndGet();
+        return outputStream -> outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(CachedReport report) throws IOException {
+        try (var inputStream = report.inputStream()) {
+            String content = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(report.size()).isEqualTo(content.length());
+            return content;
+        }
+    }
+
+}
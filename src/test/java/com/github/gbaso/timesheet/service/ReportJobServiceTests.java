@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.ReportJob.Status;
+
+class ReportJobServiceTests {
+
+    private static final String       owner      = "account-1";
+
+    private final TimesheetProperties properties = new TimesheetProperties();
+    private ReportJobService          service;
+
+    @AfterEach
+    void destroy() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    void generateReportInBackground() throws Exception {
+        service = new ReportJobService(properties);
+        ReportJob job = service.submit("report.xlsx", owner, progress -> {
+            progress.pageFetched();
+            progress.rowIngested();
+            progress.rowIngested();
+            return outputStream -> outputStream.write("report".getBytes(StandardCharsets.UTF_8));
+        });
+        assertThat(service.getJob(job.getId(), owner)).containsSame(job);
+        assertThat(service.getJob(job.getId(), "account-2")).isEmpty();
+
+        awaitCompletion(job);
+        assertThat(job.getStatus()).isEqualTo(Status.DONE);
+        assertThat(job.getProgress().getPagesFetched()).isEqualTo(1);
+        assertThat(job.getProgress().getRowsIngested()).isEqualTo(2);
+        assertThat(Files.readString(job.getResult())).isEqualTo("report");
+    }
+
+    @Test
+    void recordFailure() throws Exception {
+        service = new ReportJobService(properties);
+        ReportJob job = service.submit("report.xlsx", owner, progress -> {
+            throw new IOException("Cannot read worklog");
+        });
+
+        awaitCompletion(job);
+        assertThat(job.getStatus()).isEqualTo(Status.FAILED);
+        assertThat(job.getError()).isEqualTo("Cannot read worklog");
+        assertThat(job.getResult()).isNull();
+    }
+
+    @Test
+    void rejectJobsWhenQueueIsFull() throws Exception {
+        properties.getJobs().setConcurrency(1);
+        properties.getJobs().setQueueCapacity(1);
+        service = new ReportJobService(properties);
+        var release = new CountDownLatch(1);
+        ReportJobService.ReportTask blocked = progress -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return outputStream -> {};
+        };
+        ReportJob running = service.submit("report.xlsx", owner, blocked);
+        ReportJob queued = service.submit("report.xlsx", owner, blocked);
+
+        assertThatThrownBy(() -> service.submit("report.xlsx", owner, blocked)).isInstanceOf(RejectedExecutionException.class);
+        release.countDown();
+        awaitCompletion(running);
+        awaitCompletion(queued);
+        assertThat(queued.getStatus()).isEqualTo(Status.DONE);
+    }
+
+    @Test
+    void expireCompletedJobs() throws Exception {
+        properties.getJobs().setResultTimeToLive(Duration.ZERO);
+        service = new ReportJobService(properties);
+        ReportJob job = service.submit("report.xlsx", owner, progress -> outputStream -> outputStream.write(1));
+        awaitCompletion(job);
+        Path result = job.getResult();
+        assertThat(result).exists();
+
+        service.expireJobs();
+        assertThat(service.getJob(job.getId(), owner)).isEmpty();
+        assertThat(result).doesNotExist();
+    }
+
+    private static void awaitCompletion(ReportJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((job.getStatus() == Status.QUEUED || job.getStatus() == Status.RUNNING) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(job.getStatus()).isIn(Status.DONE, Status.FAILED);
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.util.LinkedMultiValueMap;
+
+import com.github.gbaso.timesheet.TimesheetAnalizerApplication;
+import com.github.gbaso.timesheet.utils.VirtualThreads;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Load test of the blocking API report path, run with {@code ./mvnw test -Dtest=ReportThreadsLoadTests -Dload-test=true}. The application is started on a
+ * random port, reading from a stub Jira answering with latency, and bursts of concurrent {@code /report-api} requests are sent to it over HTTP: first with the
+ * servlet requests handled by the default Tomcat pool of 200 platform threads, then by virtual threads when running on Java 21 or later, logging the reports
+ * completed per second.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "load-test", matches = "true")
+class ReportThreadsLoadTests {
+
+    private static final int[]                     CONCURRENCY    = { 100, 400, 1600 };
+    private static final Duration                  LATENCY        = Duration.ofMillis(100);
+    private static final String                    author         = "Giacomo Baso";
+
+    private static final OAuth2AuthenticationToken authentication = new OAuth2AuthenticationToken(
+            new DefaultOAuth2User(AuthorityUtils.NO_AUTHORITIES, Map.of("account_id", "load-test"), "account_id"), AuthorityUtils.NO_AUTHORITIES, "jira");
+
+    private JiraStubServer                         jira;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jira = new JiraStubServer();
+        jira.setLatency(LATENCY);
+        for (int i = 1; i <= 10; i++) {
+            jira.addIssue(String.valueOf(100 + i), "TS-" + i, "Issue " + i, "Task");
+            jira.addWorklog(i, String.valueOf(100 + i), "2022-05-" + String.format("%02d", i), "1h", author);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jira.close();
+    }
+
+    @Test
+    void platformThreads() throws Exception {
+        run("platform", false);
+    }
+
+    @Test
+    void virtualThreads() throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            log.info("Virtual threads are not supported on Java {}", Runtime.version().feature());
+            return;
+        }
+        run("virtual", true);
+    }
+
+    /**
+     * Starts the application with or without virtual threads, and sends it the bursts of reports. Admission control is disabled, so that the reports are only
+     * limited by the threads handling them.
+     */
+    private void run(String threads, boolean virtual) throws Exception {
+        try (var context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(TimesheetAnalizerApplication.class, LoadTestConfiguration.class)
+                .properties(
+                        "server.port=0",
+                        "CLIENT_ID=load-test",
+                        "CLIENT_SECRET=load-test",
+                        "BASE_URL=http://localhost",
+                        "timesheet.jira.base-url=" + jira.getUrl(),
+                        "timesheet.threads.virtual=" + virtual,
+                        "timesheet.admission.enabled=false")
+                .run()) {
+            var registration = context.getBean(ClientRegistrationRepository.class).findByRegistrationId("jira");
+            var accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "load-test", Instant.now(), Instant.now().plus(Duration.ofHours(1)));
+            context.getBean(OAuth2AuthorizedClientService.class)
+                    .saveAuthorizedClient(new OAuth2AuthorizedClient(registration, authentication.getName(), accessToken), authentication);
+            var restTemplate = new TestRestTemplate(new RestTemplateBuilder().rootUri("http://localhost:" + context.getWebServer().getPort()));
+            for (int concurrency : CONCURRENCY) {
+                send(restTemplate, threads, concurrency);
+            }
+        }
+    }
+
+    private void send(TestRestTemplate restTemplate, String threads, int concurrency) throws Exception {
+        var form = new LinkedMultiValueMap<String, Object>();
+        form.add("projects", "TS");
+        form.add("author", author);
+        form.add("from", "2022-05-01");
+        form.add("to", "2022-05-31");
+        var headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        var request = new HttpEntity<>(form, headers);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            long start = System.nanoTime();
+            List<Future<ResponseEntity<byte[]>>> reports = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                reports.add(clients.submit(() -> restTemplate.postForEntity("/report-api", request, byte[].class)));
+            }
+            for (Future<ResponseEntity<byte[]>> report : reports) {
+                assertThat(report.get().getStatusCode()).isEqualTo(HttpStatus.OK);
+                assertThat(report.get().getBody()).isNotEmpty();
+            }
+            long elapsed = Math.max(1, Duration.ofNanos(System.nanoTime() - start).toMillis());
+            log.info("{} threads, {} concurrent reports: {} ms, {} reports/s", threads, concurrency, elapsed, concurrency * 1000L / elapsed);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Authenticates every request as the principal of the authorized client saved by the test, storing the security context in the session before the
+     * security filters read it.
+     */
+    @TestConfiguration(proxyBeanMethods = false)
+    static class LoadTestConfiguration {
+
+        @Bean
+        FilterRegistrationBean<Filter> loadTestAuthenticationFilter() {
+            Filter filter = (request, response, chain) -> {
+                ((HttpServletRequest) request).getSession()
+                        .setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(authentication));
+                chain.doFilter(request, response);
+            };
+            var registration = new FilterRegistrationBean<>(filter);
+            registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+            return registration;
+        }
+
+    }
+
+}
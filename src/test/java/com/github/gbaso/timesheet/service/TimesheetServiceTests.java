@@ -0,0 +1,190 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class TimesheetServiceTests {
+
+    private static final String    author = "Giacomo Baso";
+    private static final LocalDate from   = LocalDate.of(2022, 5, 1);
+    private static final LocalDate to     = LocalDate.of(2022, 5, 31);
+
+    private JiraStubServer         jira;
+    private TimesheetProperties    properties;
+    private MeterRegistry          meterRegistry;
+    private TimesheetService       service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jira = new JiraStubServer();
+        for (int i = 1; i <= 10; i++) {
+            jira.addIssue(String.valueOf(100 + i), "TS-" + i, "Issue " + i, "Task");
+        }
+        for (int i = 1; i <= 50; i++) {
+            jira.addWorklog(i, String.valueOf(100 + (i % 10) + 1), "2022-05-" + String.format("%02d", i % 28 + 1), "1h", i % 5 == 0 ? "Someone Else" : author);
+        }
+        properties = new TimesheetProperties();
+        var worklogStore = new WorklogStore(properties, Jackson2ObjectMapperBuilder.json().build());
+        meterRegistry = new SimpleMeterRegistry();
+        var issueCache = new IssueCache(properties, meterRegistry);
+        var siteCache = new SiteCache(properties, meterRegistry);
+        var userCache = new UserCache(properties, meterRegistry);
+        var reportMetrics = new ReportMetrics(meterRegistry);
+        var apiReaderService = new ApiReaderService(WebClient.builder().baseUrl(jira.getUrl()).build(), properties, worklogStore, issueCache, siteCache, userCache,
+                reportMetrics);
+        service = new TimesheetService(new CsvReaderService(properties), apiReaderService, new WorkbookService(properties), reportMetrics, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jira.close();
+    }
+
+    @Test
+    void fetchReportLazily() {
+        Mono<ReportWriter> report = service.fetchReportFromAPI(Set.of("TS"), Set.of(author), from, to, false, null);
+        assertThat(jira.getCalls("updated")).isZero();
+
+        assertThat(report.block()).isNotNull();
+        assertThat(jira.getCalls("updated")).isEqualTo(1);
+    }
+
+    @Test
+    void fetchedReportMatchesBlockingReport() throws IOException {
+        List<List<List<String>>> fetched = readSheets(service.fetchReportFromAPI(Set.of("TS"), Set.of(author), from, to, false, null).block());
+        List<List<List<String>>> read = readSheets(service.generateReportFromAPI(Set.of("TS"), author, from, to, null, null));
+
+        assertThat(fetched).hasSize(1).isEqualTo(read);
+        assertThat(fetched.get(0).get(0)).containsExactly("User:", author);
+        assertThat(fetched.get(0)).hasSize(4 + 8 + 1);
+    }
+
+    @Test
+    void fetchTeamReport() throws IOException {
+        Set<String> authors = Set.of(author, "Someone Else");
+        List<List<List<String>>> fetched = readSheets(service.fetchReportFromAPI(Set.of("TS"), authors, from, to, true, null).block());
+        List<List<List<String>>> read = readSheets(service.generateTeamReportFromAPI(Set.of("TS"), authors, from, to, null, null));
+
+        assertThat(fetched).hasSize(3).isEqualTo(read);
+        assertThat(fetched.get(0).get(0)).containsExactly("Team:", "2 users");
+    }
+
+    @Test
+    void fetchOneAuthorTeamReport() throws IOException {
+        List<List<List<String>>> fetched = readSheets(service.fetchReportFromAPI(Set.of("TS"), Set.of(author), from, to, true, null).block());
+        List<List<List<String>>> read = readSheets(service.generateTeamReportFromAPI(Set.of("TS"), Set.of(author), from, to, null, null));
+
+        assertThat(fetched).hasSize(2).isEqualTo(read);
+        assertThat(fetched.get(0).get(0)).containsExactly("Team:", "1 users");
+    }
+
+    @Test
+    void uploadOneAuthorTeamReport() throws IOException {
+        List<List<List<String>>> uploaded;
+        try (var inputStream = new ClassPathResource("test.csv").getInputStream()) {
+            uploaded = readSheets(service.generateReportFromUpload(inputStream, Set.of(author), from, to, true));
+        }
+
+        assertThat(uploaded).hasSize(2);
+        assertThat(uploaded.get(0).get(0)).containsExactly("Team:", "1 users");
+        try (var inputStream = new ClassPathResource("test.csv").getInputStream()) {
+            List<List<List<String>>> single = readSheets(service.generateReportFromUpload(inputStream, Set.of(author), from, to, false));
+            assertThat(single.get(0).get(0)).containsExactly("User:", author);
+        }
+    }
+
+    @Test
+    void recordReportStages() throws IOException {
+        readSheets(service.generateReportFromAPI(Set.of("TS"), author, from, to, null, null));
+        try (var inputStream = new ClassPathResource("test.csv").getInputStream()) {
+            readSheets(service.generateReportFromInputSteam(inputStream, author, from, to));
+        }
+
+        for (String stage : List.of("read", "convert", "write")) {
+            assertThat(meterRegistry.get(ReportMetrics.STAGE).tags("source", "api", "stage", stage).timer().count()).isEqualTo(1);
+            assertThat(meterRegistry.get(ReportMetrics.STAGE).tags("source", "file", "stage", stage).timer().count()).isEqualTo(1);
+        }
+        assertThat(meterRegistry.get(ReportMetrics.ROWS).tags("source", "api", "result", "aggregated").counter().count()).isEqualTo(40);
+        assertThat(meterRegistry.get(ReportMetrics.ROWS).tags("source", "api", "result", "filtered").counter().count()).isEqualTo(11);
+        assertThat(meterRegistry.get(ReportMetrics.CELLS).tags("source", "api").summary().totalAmount()).isEqualTo(2 + 2 * 33 + 31 + 34 + 8 * 34);
+        assertThat(meterRegistry.get(ReportMetrics.BYTES).tags("source", "api").summary().totalAmount()).isPositive();
+    }
+
+    @Test
+    void rejectServerFilesOutsideImportDirectory(@TempDir Path directory) throws IOException {
+        Path importDirectory = Files.createDirectory(directory.resolve("import"));
+        Path outside = Files.writeString(directory.resolve("outside.csv"), "Issue Key");
+        Files.writeString(importDirectory.resolve("inside.csv"), "Issue Key");
+        Files.createSymbolicLink(importDirectory.resolve("link.csv"), outside);
+        properties.getCsv().setImportDirectory(importDirectory);
+
+        assertThat(service.hashServerFile("inside.csv")).isNotBlank();
+        for (String fileName : List.of("../outside.csv", "link.csv", "missing.csv", ".")) {
+            assertThatIllegalArgumentException().isThrownBy(() -> service.hashServerFile(fileName)).withMessageContaining("Invalid file");
+        }
+    }
+
+    private static List<List<List<String>>> readSheets(ReportWriter report) throws IOException {
+        var os = new ByteArrayOutputStream();
+        report.writeTo(os);
+        var formatter = new DataFormatter();
+        List<List<List<String>>> sheets = new ArrayList<>();
+        try (var workbook = new XSSFWorkbook(new ByteArrayInputStream(os.toByteArray()))) {
+            for (Sheet sheet : workbook) {
+                List<List<String>> cells = new ArrayList<>();
+                for (Row row : sheet) {
+                    List<String> values = new ArrayList<>();
+                    row.forEach(cell -> values.add(formatter.formatCellValue(cell)));
+                    cells.add(values);
+                }
+                sheets.add(cells);
+            }
+        }
+        return sheets;
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+
+class WorkbookServiceTests {
+
+    private static final LocalDate from = LocalDate.of(2022, 5, 16);
+    private static final LocalDate to   = LocalDate.of(2022, 5, 22);
+
+    @Test
+    void streamedWorkbookHasSameContent() throws IOException {
+        var timesheet = new Timesheet(from, to);
+        timesheet.add("K2", "Test 2", from, 60);
+        timesheet.add("K1", "Test 1", from, 30);
+        timesheet.add("K2", "Test 2", to, 90);
+        var properties = new TimesheetProperties();
+        var service = new WorkbookService(properties);
+        Workbook inMemory = service.convertReport(timesheet, "Giacomo Baso");
+        assertThat(inMemory).isInstanceOf(XSSFWorkbook.class);
+
+        properties.getWorkbook().setStreamingThreshold(0);
+        properties.getWorkbook().setRowAccessWindowSize(2);
+        Workbook streamed = service.convertReport(timesheet, "Giacomo Baso");
+        assertThat(streamed).isInstanceOf(SXSSFWorkbook.class);
+
+        List<List<String>> cells = readCells(service, inMemory);
+        assertThat(readCells(service, streamed)).isEqualTo(cells);
+        assertThat(cells.get(1)).containsExactly("Total", "1h30m", "", "", "", "", "", "1h30m", "3h");
+        assertThat(cells.get(4)).startsWith("K1", "Test 1", "30m");
+    }
+
+    @Test
+    void teamWorkbookHasSummaryAndAuthorSheets() throws IOException {
+        var team = new TeamTimesheet(from, to, List.of("Giacomo Baso", "Tizio Caio", "Team"));
+        team.getTimesheet("Giacomo Baso").add("K1", "Test 1", from, 30);
+        team.getTimesheet("Tizio Caio").add("K2", "Test 2", to, 60);
+        var service = new WorkbookService(new TimesheetProperties());
+        Workbook workbook = service.convertTeamReport(team);
+
+        assertThat(workbook.getNumberOfSheets()).isEqualTo(4);
+        assertThat(workbook.getSheetName(0)).isEqualTo("Team");
+        assertThat(workbook.getSheetName(3)).isEqualTo("Team (2)");
+        List<List<String>> summary = readCells(service, workbook);
+        assertThat(summary.get(0)).containsExactly("Team:", "3 users");
+        assertThat(summary.get(1)).containsExactly("Total", "30m", "", "", "", "", "", "1h", "1h30m");
+        assertThat(summary.get(4)).startsWith("Giacomo Baso", "", "30m");
+    }
+
+    @Test
+    void nativeWorkbookHasSameContent() throws IOException {
+        var timesheet = new Timesheet(from, to);
+        timesheet.add("K2", "Test 2", from, 60);
+        timesheet.add("K1", "Escaped <&> \"quotes\"", from, 30);
+        timesheet.add("K2", "Test 2", to, 90);
+        var service = new WorkbookService(new TimesheetProperties());
+        var poiProgress = new ReportProgress();
+        byte[] poi = write(service, service.convertReport(timesheet, "Giacomo Baso", poiProgress));
+        var nativeProgress = new ReportProgress();
+        var os = new ByteArrayOutputStream();
+        service.writeReport(timesheet, "Giacomo Baso", nativeProgress, os);
+        byte[] written = os.toByteArray();
+
+        assertThat(readSheets(written)).isEqualTo(readSheets(poi));
+        assertThat(readSheets(written).get("Sheet0").get(4)).startsWith("K1", "Escaped <&> \"quotes\"", "30m");
+        assertThat(nativeProgress.getCellsWritten()).isEqualTo(poiProgress.getCellsWritten());
+        try (var workbook = new XSSFWorkbook(new ByteArrayInputStream(written))) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertThat(workbook.getFontAt(sheet.getRow(0).getCell(0).getCellStyle().getFontIndex()).getBold()).isTrue();
+            assertThat(workbook.getFontAt(sheet.getRow(4).getCell(0).getCellStyle().getFontIndex()).getBold()).isFalse();
+            assertThat(sheet.getRow(1).getCell(1)).isNull();
+            assertThat(sheet.getRow(2).getFirstCellNum()).isEqualTo((short) 2);
+        }
+    }
+
+    @Test
+    void nativeTeamWorkbookHasSameSheets() throws IOException {
+        var team = new TeamTimesheet(from, to, List.of("Giacomo Baso", "Tizio Caio", "team"));
+        team.getTimesheet("Giacomo Baso").add("K1", "Test 1", from, 30);
+        team.getTimesheet("Tizio Caio").add("K2", "Test 2", to, 60);
+        var service = new WorkbookService(new TimesheetProperties());
+        byte[] poi = write(service, service.convertTeamReport(team));
+        var os = new ByteArrayOutputStream();
+        service.writeTeamReport(team, os);
+
+        Map<String, List<List<String>>> sheets = readSheets(os.toByteArray());
+        assertThat(sheets).isEqualTo(readSheets(poi));
+        assertThat(sheets.keySet()).containsExactly("Team", "Giacomo Baso", "Tizio Caio", "team (2)");
+    }
+
+    private List<List<String>> readCells(WorkbookService service, Workbook workbook) throws IOException {
+        return readSheets(write(service, workbook)).values().iterator().next();
+    }
+
+    private byte[] write(WorkbookService service, Workbook workbook) throws IOException {
+        var os = new ByteArrayOutputStream();
+        try {
+            workbook.write(os);
+        } finally {
+            service.close(workbook);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * The formatted cells of each sheet, by sheet name in order.
+     */
+    private Map<String, List<List<String>>> readSheets(byte[] bytes) throws IOException {
+        var formatter = new DataFormatter();
+        Map<String, List<List<String>>> sheets = new LinkedHashMap<>();
+        try (var written = new XSSFWorkbook(new ByteArrayInputStream(bytes))) {
+            for (Sheet sheet : written) {
+                List<List<String>> cells = new ArrayList<>();
+                for (Row row : sheet) {
+                    List<String> values = new ArrayList<>();
+                    row.forEach(cell -> values.add(formatter.formatCellValue(cell)));
+                    cells.add(values);
+                }
+                sheets.put(sheet.getSheetName(), cells);
+            }
+        }
+        return sheets;
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.WorklogStore.Delta;
+import com.github.gbaso.timesheet.service.WorklogStore.Snapshot;
+import com.github.gbaso.timesheet.service.WorklogStore.StoredWorklog;
+
+class WorklogStoreTests {
+
+    private static final JiraAccount   account      = new JiraAccount("cloud-1", "account-1");
+    private static final JiraAccount   otherAccount = new JiraAccount("cloud-1", "account-2");
+    private static final StoredWorklog worklog      = new StoredWorklog("101", LocalDate.of(2022, 5, 2), "1h", "Giacomo Baso");
+
+    @TempDir
+    Path                               directory;
+
+    private TimesheetProperties        properties;
+    private WorklogStore               store;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TimesheetProperties();
+        properties.getJira().setStoreDirectory(directory);
+        store = createStore();
+    }
+
+    private WorklogStore createStore() {
+        return new WorklogStore(properties, Jackson2ObjectMapperBuilder.json().build());
+    }
+
+    @Test
+    void keepAccountsApart() {
+        store.apply(account, new Delta(false, 0, 100, 100, Map.of(1, worklog), Set.of(), Map.of("101", new Issue("TS-1", "Issue 1", "Task", "10000")), false));
+
+        assertThat(store.get(account).worklogs()).containsOnlyKeys(1);
+        assertThat(store.get(otherAccount)).isEqualTo(Snapshot.EMPTY);
+        assertThat(createStore().get(otherAccount)).isEqualTo(Snapshot.EMPTY);
+        assertThat(createStore().get(account).issues()).containsOnlyKeys("101");
+    }
+
+    @Test
+    void followDeletedWorklogsWithOwnCursor() {
+        store.apply(account, new Delta(false, 0, 100, 100, Map.of(1, worklog, 2, worklog), Set.of(), Map.of(), false));
+        Snapshot snapshot = store.apply(account, new Delta(true, 100, 150, 300, Map.of(), Set.of(2), Map.of(), false));
+
+        assertThat(snapshot.worklogs()).containsOnlyKeys(1);
+        assertThat(snapshot.until()).isEqualTo(150);
+        assertThat(snapshot.deletedSince()).isEqualTo(300);
+        assertThat(new Snapshot(0, 150, 0, 1, 0, Map.of(), Map.of()).deletedSince()).isEqualTo(150);
+    }
+
+    @Test
+    void dropStaleDeltas() {
+        var updatedWorklog = new StoredWorklog("101", LocalDate.of(2022, 5, 2), "2h", "Giacomo Baso");
+        store.apply(account, new Delta(false, 0, 100, 100, Map.of(1, worklog), Set.of(), Map.of(), false));
+        // two syncs read the same snapshot, the one which read the newer worklog is applied first
+        Snapshot newer = store.apply(account, new Delta(true, 100, 200, 200, Map.of(1, updatedWorklog), Set.of(), Map.of(), false));
+        Snapshot older = store.apply(account, new Delta(true, 100, 150, 150, Map.of(1, worklog), Set.of(), Map.of(), false));
+
+        assertThat(older).isEqualTo(newer);
+        assertThat(store.get(account).worklogs()).containsEntry(1, updatedWorklog);
+        assertThat(store.apply(account, new Delta(false, 0, 180, 180, Map.of(1, worklog), Set.of(), Map.of(), false))).isEqualTo(newer);
+    }
+
+    @Test
+    void replaceIssuesReadAgain() {
+        var issue = new Issue("TS-1", "Issue 1", "Task", "10000");
+        store.apply(account, new Delta(false, 0, 100, 100, Map.of(1, worklog), Set.of(), Map.of("101", issue, "102", issue), false));
+        var renamed = new Issue("TS-1", "Renamed issue", "Task", "10000");
+
+        Snapshot snapshot = store.apply(account, new Delta(true, 100, 150, 150, Map.of(), Set.of(), Map.of("101", renamed), true));
+
+        assertThat(snapshot.issues()).containsOnly(Map.entry("101", renamed));
+        assertThat(snapshot.issuesReadAt()).isPositive();
+        assertThat(createStore().get(account).issues()).containsOnly(Map.entry("101", renamed));
+    }
+
+    @Test
+    void writeOnlyChangedSnapshots() throws IOException {
+        Snapshot written = store.apply(account, new Delta(false, 0, 100, 100, Map.of(1, worklog), Set.of(), Map.of(), false));
+        Path file;
+        try (var files = Files.walk(directory)) {
+            file = files.filter(path -> path.toString().endsWith(".json")).findFirst().orElseThrow();
+        }
+        FileTime modified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, modified);
+
+        Snapshot synced = store.apply(account, new Delta(true, 100, 200, 200, Map.of(), Set.of(), Map.of(), false));
+
+        assertThat(synced.until()).isEqualTo(200);
+        assertThat(synced.version()).isEqualTo(written.version());
+        assertThat(Files.getLastModifiedTime(file)).isEqualTo(modified);
+        assertThat(createStore().get(account).until()).isEqualTo(100);
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import org.junit.jupiter.api.Test;
+
+class TimeUtilsTests {
+
+    @Test
+    void parseMinutes() {
+        assertThat(TimeUtils.parseMinutes("45m")).isEqualTo(45);
+        assertThat(TimeUtils.parseMinutes("1d 2h 30m")).isEqualTo(8 * 60 + 150);
+        assertThat(TimeUtils.parseMinutes(new StringBuilder("1w 1d"))).isEqualTo(6 * 8 * 60);
+        assertThat(TimeUtils.parseMinutes("1w 1d", 7, 4)).isEqualTo(5 * 7 * 60);
+        assertThatIllegalArgumentException().isThrownBy(() -> TimeUtils.parseMinutes(""));
+        assertThatIllegalArgumentException().isThrownBy(() -> TimeUtils.parseMinutes("30"));
+        assertThatIllegalArgumentException().isThrownBy(() -> TimeUtils.parseMinutes("1x"));
+    }
+
+    @Test
+    void formatMinutes() {
+        assertThat(TimeUtils.formatMinutes(0)).isEmpty();
+        assertThat(TimeUtils.formatMinutes(45)).isEqualTo("45m");
+        assertThat(TimeUtils.formatMinutes(90)).isEqualTo("1h30m").isSameAs(TimeUtils.formatMinutes(90));
+        assertThat(TimeUtils.formatMinutes(100 * 60)).isEqualTo("100h");
+    }
+
+}
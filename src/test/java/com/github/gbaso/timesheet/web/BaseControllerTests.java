@@ -0,0 +1,114 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class BaseControllerTests {
+
+    private final BaseController controller = new BaseController() {};
+
+    @Test
+    void answerNotModifiedToSafeRequests() {
+        for (String method : new String[] { "GET", "HEAD" }) {
+            var request = new MockHttpServletRequest(method, "/report");
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"other\", \"key\"");
+            var response = new MockHttpServletResponse();
+
+            assertThat(controller.checkNotModified("key", request, response)).isTrue();
+            assertThat(response.getStatus()).isEqualTo(304);
+            assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"key\"");
+        }
+    }
+
+    @Test
+    void ignoreMatchingTagOfPost() {
+        var request = new MockHttpServletRequest("POST", "/report-file");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"key\"");
+        var response = new MockHttpServletResponse();
+
+        assertThat(controller.checkNotModified("key", request, response)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"key\"");
+    }
+
+    @Test
+    void spoolReportWithContentLength() throws IOException {
+        byte[] content = "report content".getBytes(StandardCharsets.UTF_8);
+        var spoolFile = new AtomicReference<Path>();
+        Set<Path> before = spoolFiles();
+        var response = new MockHttpServletResponse();
+
+        controller.downloadReport(outputStream -> {
+            spoolFile.set(newSpoolFile(before));
+            outputStream.write(content);
+        }, "report.xlsx", BaseController.REPORT_CONTENT_TYPE, true, response);
+
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+        assertThat(response.getContentLengthLong()).isEqualTo(content.length);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).isEqualTo("attachment; filename=\"report.xlsx\"");
+        assertThat(spoolFile.get()).isNotNull().doesNotExist();
+    }
+
+    @Test
+    void deleteSpoolFileWhenReportFails() throws IOException {
+        var spoolFile = new AtomicReference<Path>();
+        Set<Path> before = spoolFiles();
+        var response = new MockHttpServletResponse();
+
+        assertThatIOException().isThrownBy(() -> controller.downloadReport(outputStream -> {
+            spoolFile.set(newSpoolFile(before));
+            outputStream.write(1);
+            throw new IOException("Disk full");
+        }, "report.xlsx", BaseController.REPORT_CONTENT_TYPE, true, response));
+
+        assertThat(spoolFile.get()).isNotNull().doesNotExist();
+        assertThat(response.isCommitted()).isFalse();
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    /**
+     * The spool files in the temporary directory, since their names are not exposed by the controller.
+     */
+    private static Set<Path> spoolFiles() throws IOException {
+        try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().matches("report.*\\.tmp")).collect(Collectors.toSet());
+        }
+    }
+
+    private static Path newSpoolFile(Set<Path> before) throws IOException {
+        Set<Path> created = spoolFiles();
+        created.removeAll(before);
+        assertThat(created).hasSize(1);
+        return created.iterator().next();
+    }
+
+}
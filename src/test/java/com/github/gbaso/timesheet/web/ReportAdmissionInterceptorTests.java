@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.security.Principal;
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.ReportAdmission;
+import com.github.gbaso.timesheet.service.ReportAdmission.Permit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class ReportAdmissionInterceptorTests {
+
+    private ReportAdmission            admission;
+    private ReportAdmissionInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new TimesheetProperties();
+        var config = properties.getAdmission();
+        config.setEnabled(true);
+        config.setMaxCost(1);
+        config.setMaxUserCost(1);
+        config.setMaxWait(Duration.ofSeconds(10));
+        config.setRetryAfter(Duration.ofSeconds(15));
+        admission = new ReportAdmission(properties, new SimpleMeterRegistry());
+        interceptor = new ReportAdmissionInterceptor(admission);
+    }
+
+    @Test
+    void rejectAsynchronousReportsWithoutWaiting() throws Exception {
+        var permit = admission.admit("other", 1);
+        var request = reportRequest("alice");
+        var response = new MockHttpServletResponse();
+
+        assertThat(interceptor.preHandle(request, response, handler("reactiveReport"))).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("15");
+
+        permit.release();
+        response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(request, response, handler("reactiveReport"))).isTrue();
+        interceptor.afterCompletion(request, response, handler("reactiveReport"), null);
+    }
+
+    @Test
+    void budgetLoggedInUsersByAccount() throws Exception {
+        var request = reportRequest("alice");
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), handler("report"))).isTrue();
+
+        // the same account is over its budget from any session
+        var response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(reportRequest("alice"), response, handler("report"))).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), handler("report"), null);
+    }
+
+    @Test
+    void holdCostOfJobsUntilTheyComplete() throws Exception {
+        var permit = admission.admit("other", 1);
+        var job = new HandlerMethod(new ReportJobController(null, null, null), ReportJobController.class.getMethod("getStatus", String.class, Principal.class));
+        var response = new MockHttpServletResponse();
+
+        assertThat(interceptor.preHandle(reportRequest("alice"), response, job)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+
+        permit.release();
+        var request = reportRequest("alice");
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), job)).isTrue();
+        Permit jobPermit = ReportAdmissionInterceptor.takePermit(request);
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), job, null);
+        assertThat(interceptor.preHandle(reportRequest("bob"), new MockHttpServletResponse(), handler("reactiveReport"))).isFalse();
+
+        jobPermit.release();
+        assertThat(interceptor.preHandle(reportRequest("bob"), new MockHttpServletResponse(), handler("reactiveReport"))).isTrue();
+    }
+
+    private static MockHttpServletRequest reportRequest(String principal) {
+        var request = new MockHttpServletRequest("POST", "/report-api");
+        request.setParameter("from", "2021-06-01");
+        request.setParameter("to", "2021-06-30");
+        request.setUserPrincipal(() -> principal);
+        return request;
+    }
+
+    private static HandlerMethod handler(String name) throws NoSuchMethodException {
+        return new HandlerMethod(new Handlers(), Handlers.class.getMethod(name));
+    }
+
+    public static class Handlers {
+
+        public String report() {
+            return "report";
+        }
+
+        public Mono<String> reactiveReport() {
+            return Mono.just("report");
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2021-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gbaso.timesheet.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.github.gbaso.timesheet.config.TimesheetProperties;
+import com.github.gbaso.timesheet.service.ApiReaderService;
+import com.github.gbaso.timesheet.service.CsvReaderService;
+import com.github.gbaso.timesheet.service.IssueCache;
+import com.github.gbaso.timesheet.service.ReportCache;
+import com.github.gbaso.timesheet.service.ReportMetrics;
+import com.github.gbaso.timesheet.service.SiteCache;
+import com.github.gbaso.timesheet.service.TimesheetService;
+import com.github.gbaso.timesheet.service.UserCache;
+import com.github.gbaso.timesheet.service.WorkbookService;
+import com.github.gbaso.timesheet.service.WorklogStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TimesheetControllerTests {
+
+    @TempDir
+    Path                     directory;
+
+    private CsvReaderService csvReaderService;
+    private MockMvc          mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (var inputStream = new ClassPathResource("test.csv").getInputStream()) {
+            Files.copy(inputStream, directory.resolve("test.csv"));
+        }
+        var properties = new TimesheetProperties();
+        properties.getCsv().setImportDirectory(directory);
+        properties.getReport().setCacheDirectory(Files.createDirectory(directory.resolve("cache")));
+        var meterRegistry = new SimpleMeterRegistry();
+        var reportMetrics = new ReportMetrics(meterRegistry);
+        // the reports are read from server files only, the Jira client is never called
+        var apiReaderService = new ApiReaderService(WebClient.create(), properties, new WorklogStore(properties, Jackson2ObjectMapperBuilder.json().build()),
+                new IssueCache(properties, meterRegistry), new SiteCache(properties, meterRegistry), new UserCache(properties, meterRegistry), reportMetrics);
+        csvReaderService = new CsvReaderService(properties);
+        var service = new TimesheetService(csvReaderService, apiReaderService, new WorkbookService(properties), reportMetrics, properties);
+        mockMvc = MockMvcBuilders.standaloneSetup(new TimesheetController(service, new ReportCache(properties), properties)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        csvReaderService.destroy();
+    }
+
+    @Test
+    void answerNotModifiedToCachedReport() throws Exception {
+        var response = mockMvc.perform(reportRequest(get("/report-server-file"))).andExpect(status().isOk()).andReturn().getResponse();
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotBlank();
+        assertThat(response.getContentAsByteArray()).isNotEmpty();
+
+        mockMvc.perform(reportRequest(get("/report-server-file")).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        mockMvc.perform(reportRequest(head("/report-server-file")).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified());
+    }
+
+    @Test
+    void ignoreMatchingTagOfPost() throws Exception {
+        String etag = mockMvc.perform(reportRequest(get("/report-server-file"))).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(reportRequest(post("/report-server-file")).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+    }
+
+    private static MockHttpServletRequestBuilder reportRequest(MockHttpServletRequestBuilder request) {
+        return request.param("file", "test.csv").param("author", "Giacomo Baso").param("from", "2022-05-16").param("to", "2022-05-16");
+    }
+
+}